@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.benchmarks;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the defaults we compare releases with:
+ * throughput and average time modes, the GC profiler for allocation
+ * rates, and JSON results written to <code>target/jmh-results.json</code>
+ * so that runs can be diffed.  Any of the usual JMH command line options
+ * override these defaults, and regular expressions select benchmarks:
+ * <pre>
+ * sbt "project kolich-spring-benchmarks" "run RequestPath -rff before.json"
+ * </pre>
+ */
+public final class BenchmarkRunner {
+	
+	private static final String DEFAULT_RESULTS_FILE =
+		"target/jmh-results.json";
+	
+	// Cannot instantiate.
+	private BenchmarkRunner() {}
+	
+	public static void main(final String[] args) throws Exception {
+		final CommandLineOptions cli = new CommandLineOptions(args);
+		final ChainedOptionsBuilder options = new OptionsBuilder()
+			.parent(cli)
+			.addProfiler(GCProfiler.class);
+		if(cli.getBenchModes().isEmpty()) {
+			options.mode(Mode.Throughput).mode(Mode.AverageTime);
+		}
+		if(!cli.getResultFormat().hasValue()) {
+			options.resultFormat(ResultFormatType.JSON);
+		}
+		if(!cli.getResult().hasValue()) {
+			options.result(DEFAULT_RESULTS_FILE);
+		}
+		new Runner(options.build()).run();
+	}
+	
+}
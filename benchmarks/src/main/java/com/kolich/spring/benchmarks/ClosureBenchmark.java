@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.benchmarks;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.kolich.spring.controllers.KolichClosureMetrics;
+import com.kolich.spring.controllers.KolichClosurePolicies;
+import com.kolich.spring.controllers.KolichClosurePolicy;
+import com.kolich.spring.controllers.KolichControllerClosure;
+import com.kolich.spring.exceptions.KolichSpringException;
+
+/**
+ * Overhead of {@link KolichControllerClosure#execute()} around a trivial
+ * {@link KolichControllerClosure#doit()}: with and without metrics, with
+ * and without a bulkhead policy, and the cost of a failing closure with
+ * a regular versus a stackless wrapped exception.  Runs on four threads,
+ * so contention on the shared metrics and policy shows up.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ClosureBenchmark {
+	
+	private static final Logger logger__ =
+		LoggerFactory.getLogger(ClosureBenchmark.class);
+	
+	private static final String NAME = "benchmark";
+	
+	@Param({"false", "true"})
+	public boolean metrics;
+	
+	@Param({"false", "true"})
+	public boolean policy;
+	
+	private final KolichClosureMetrics metrics_ = new KolichClosureMetrics();
+	
+	@Setup
+	public void setup() throws Exception {
+		metrics_.setEnabled(metrics);
+		metrics_.afterPropertiesSet();
+		if(policy) {
+			final KolichClosurePolicy bulkhead = new KolichClosurePolicy();
+			bulkhead.setMaxConcurrent(1000);
+			bulkhead.afterPropertiesSet();
+			KolichClosurePolicies.register(NAME, bulkhead);
+		}
+	}
+	
+	@TearDown
+	public void tearDown() throws Exception {
+		metrics_.destroy();
+		KolichClosurePolicies.unregister(NAME);
+	}
+	
+	@Benchmark
+	public String success() {
+		return new KolichControllerClosure<String>(NAME, "ok", logger__) {
+			@Override
+			public String doit() throws Exception {
+				return "ok";
+			}
+		}.execute();
+	}
+	
+	@Benchmark
+	public Object failure() {
+		return fail(false);
+	}
+	
+	@Benchmark
+	public Object expectedFailure() {
+		return fail(true);
+	}
+	
+	private static final Object fail(final boolean expected) {
+		try {
+			return new KolichControllerClosure<String>(NAME, "fail",
+				logger__) {
+				@Override
+				public String doit() throws Exception {
+					throw new IOException("Miss.");
+				}
+				@Override
+				protected boolean isExpectedFailure(final Exception e) {
+					return expected;
+				}
+			}.execute();
+		} catch (KolichSpringException e) {
+			return e;
+		}
+	}
+	
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.benchmarks;
+
+import java.util.Arrays;
+
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import com.kolich.common.entities.KolichCommonEntity;
+import com.kolich.spring.views.KolichViewSerializable;
+
+/**
+ * Shared mock request and payload fixtures.
+ */
+final class Fixtures {
+	
+	// Cannot instantiate.
+	private Fixtures() {}
+	
+	static final MockHttpServletRequest request(final String method,
+		final String uri, final String accept) {
+		final MockHttpServletRequest request =
+			new MockHttpServletRequest(method, uri);
+		request.setServerName("localhost");
+		request.setServerPort(8080);
+		if(accept != null) {
+			request.addHeader("Accept", accept);
+		}
+		return request;
+	}
+	
+	/**
+	 * An entity whose serialized form is roughly the given size.
+	 */
+	static final class Payload extends KolichCommonEntity {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final String data_;
+		
+		Payload(final int size) {
+			final char[] data = new char[size];
+			Arrays.fill(data, 'k');
+			data_ = new String(data);
+		}
+		
+		@Override
+		public boolean equals(final Object obj) {
+			return obj instanceof Payload && ((Payload)obj).data_.equals(data_);
+		}
+		
+		@Override
+		public int hashCode() {
+			return data_.hashCode();
+		}
+		
+	}
+	
+	static final KolichViewSerializable serializable(
+		final KolichCommonEntity entity) {
+		return new KolichViewSerializable() {
+			@Override
+			public KolichCommonEntity getEntity() {
+				return entity;
+			}
+		};
+	}
+	
+}
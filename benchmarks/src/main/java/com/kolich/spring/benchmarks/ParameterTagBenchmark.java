@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.benchmarks;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockPageContext;
+import org.springframework.mock.web.MockServletContext;
+
+import com.kolich.spring.tags.parameter.ParameterTag;
+
+/**
+ * A page with many parameter tag invocations: the init parameter snapshot
+ * read by {@link ParameterTag} versus asking the servlet context directly.
+ * Note that the mock servlet context is a plain map; containers that
+ * synchronize, or walk a table, in getInitParameter() fare worse.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParameterTagBenchmark {
+	
+	private static final int TAGS_PER_PAGE = 100;
+	private static final int PARAMETERS = 20;
+	private static final String PARAMETER = "param.7";
+	
+	private static final class BenchmarkParameterTag extends ParameterTag {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final boolean snapshot_;
+		private String last_;
+		
+		private BenchmarkParameterTag(final boolean snapshot) {
+			snapshot_ = snapshot;
+		}
+		
+		@Override
+		protected int myDoStartTag() throws Exception {
+			last_ = (snapshot_) ? getParameter(PARAMETER) :
+				getServletContext().getInitParameter(PARAMETER);
+			return SKIP_BODY;
+		}
+		
+	}
+	
+	private BenchmarkParameterTag snapshot_;
+	private BenchmarkParameterTag direct_;
+	
+	@Setup
+	public void setup() {
+		final MockServletContext servletContext = new MockServletContext();
+		for(int i = 0; i < PARAMETERS; i++) {
+			servletContext.addInitParameter("param." + i, "value." + i);
+		}
+		final MockPageContext pageContext =
+			new MockPageContext(servletContext);
+		snapshot_ = new BenchmarkParameterTag(true);
+		snapshot_.setPageContext(pageContext);
+		direct_ = new BenchmarkParameterTag(false);
+		direct_.setPageContext(pageContext);
+	}
+	
+	@Benchmark
+	public String snapshot() throws Exception {
+		return page(snapshot_);
+	}
+	
+	@Benchmark
+	public String direct() throws Exception {
+		return page(direct_);
+	}
+	
+	private static final String page(final BenchmarkParameterTag tag)
+		throws Exception {
+		for(int i = 0; i < TAGS_PER_PAGE; i++) {
+			tag.doStartTag();
+		}
+		return tag.last_;
+	}
+	
+}
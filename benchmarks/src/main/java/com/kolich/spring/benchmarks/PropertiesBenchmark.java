@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.benchmarks;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kolich.spring.beans.KolichWebAppProperties;
+
+/**
+ * Reads from {@link KolichWebAppProperties}, raw and typed, from four
+ * threads at once.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class PropertiesBenchmark {
+	
+	private KolichWebAppProperties properties_;
+	
+	@Setup
+	public void setup() {
+		final Map<String, Object> properties = new HashMap<String, Object>();
+		for(int i = 0; i < 50; i++) {
+			properties.put("property." + i, Integer.toString(i));
+		}
+		properties.put("timeout", "30s");
+		properties_ = new KolichWebAppProperties() {
+			@Override
+			public void afterPropertiesSet() {
+				// Nothing.
+			}
+		};
+		properties_.setProperties(properties);
+	}
+	
+	@Benchmark
+	public Object getProperty() {
+		return properties_.getProperty("property.42");
+	}
+	
+	@Benchmark
+	public int getInt() {
+		return properties_.getInt("property.42", 0);
+	}
+	
+	@Benchmark
+	public int parseInt() {
+		// What callers had to do before the typed accessors.
+		return Integer.parseInt((String)properties_.getProperty("property.42"));
+	}
+	
+	@Benchmark
+	public long getDuration() {
+		return properties_.getDuration("timeout", MILLISECONDS, 0L);
+	}
+	
+}
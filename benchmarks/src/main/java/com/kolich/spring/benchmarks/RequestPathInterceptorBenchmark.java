@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.benchmarks;
+
+import static com.kolich.spring.benchmarks.Fixtures.request;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.kolich.spring.exceptions.InvalidResourceException;
+import com.kolich.spring.interceptors.RequestPathInterceptor;
+import com.kolich.spring.interceptors.RequestPathInterceptor.RejectionStrategy;
+
+/**
+ * {@link RequestPathInterceptor#preHandle} against a matching request,
+ * which hits the last of the mappings, and a request that matches none
+ * of them; the latter is the throw-heavy path under scanner traffic.
+ * The mixed benchmark cycles through a fixed set of requests that are
+ * mostly distinct misses, like a site being scanned while it still
+ * serves some real traffic.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestPathInterceptorBenchmark {
+	
+	@Param({"10", "100", "1000"})
+	public int mappings;
+	
+	@Param({"EXCEPTION", "STACKLESS_EXCEPTION", "STATUS"})
+	public RejectionStrategy rejection;
+	
+	@Param({"0", "10000"})
+	public long verdictCacheSize;
+	
+	/**
+	 * Every tenth request of the mixed set is a hit; the rest are
+	 * scanner probes.
+	 */
+	private static final int MIXED_REQUESTS = 100;
+	private static final int MIXED_HIT_EVERY = 10;
+	private static final String[] SCANNER_PATHS = {
+		"/wp-login.php", "/wp-admin/setup-config.php", "/xmlrpc.php",
+		"/.env", "/.git/config", "/phpmyadmin/index.php",
+		"/cgi-bin/luci", "/admin/config.php", "/vendor/phpunit/eval-stdin.php"};
+	
+	private RequestPathInterceptor interceptor_;
+	private MockHttpServletRequest hit_;
+	private MockHttpServletRequest miss_;
+	private MockHttpServletRequest[] mixed_;
+	private int next_;
+	private MockHttpServletResponse response_;
+	
+	@Setup
+	public void setup() throws Exception {
+		final List<String> mappings = new ArrayList<String>(this.mappings);
+		for(int i = 0; i < this.mappings; i++) {
+			// A mix of anchored literal prefixes, and patterns that have
+			// to go through the fused regular expression.
+			mappings.add((i % 2 == 0) ?
+				"GET:^http://localhost:8080/api/v1/resource" + i + "/\\d+$" :
+				"*:^https?://[^/]+/static/bundle" + i + "\\.(js|css)$");
+		}
+		interceptor_ = new RequestPathInterceptor();
+		interceptor_.setRequestMappings(mappings);
+		interceptor_.setRejectionStrategy(rejection);
+		interceptor_.setVerdictCacheSize(verdictCacheSize);
+		interceptor_.setNegativeVerdictCacheSize(verdictCacheSize);
+		interceptor_.afterPropertiesSet();
+		final int last = this.mappings - 1;
+		hit_ = request("GET", (last % 2 == 0) ?
+			"/api/v1/resource" + last + "/12345" :
+			"/static/bundle" + last + ".js", null);
+		miss_ = request("GET", "/wp-admin/setup-config.php", null);
+		mixed_ = new MockHttpServletRequest[MIXED_REQUESTS];
+		for(int i = 0; i < MIXED_REQUESTS; i++) {
+			// Scanners probe the same files under every directory they
+			// can think of, so each miss is its own verdict cache entry.
+			mixed_[i] = (i % MIXED_HIT_EVERY == 0) ? hit_ :
+				request("GET", "/site" + i +
+					SCANNER_PATHS[i % SCANNER_PATHS.length], null);
+		}
+		next_ = 0;
+		response_ = new MockHttpServletResponse();
+	}
+	
+	@Benchmark
+	public boolean hit() throws Exception {
+		return interceptor_.preHandle(hit_, response_, null);
+	}
+	
+	@Benchmark
+	public Object miss() throws Exception {
+		try {
+			return interceptor_.preHandle(miss_, response_, null);
+		} catch (InvalidResourceException e) {
+			return e;
+		}
+	}
+	
+	@Benchmark
+	public Object mixed() throws Exception {
+		final MockHttpServletRequest request = mixed_[next_];
+		next_ = (next_ + 1) % MIXED_REQUESTS;
+		try {
+			return interceptor_.preHandle(request, response_, null);
+		} catch (InvalidResourceException e) {
+			return e;
+		}
+	}
+	
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.benchmarks;
+
+import static com.kolich.spring.benchmarks.Fixtures.request;
+import static com.kolich.spring.benchmarks.Fixtures.serializable;
+import static com.kolich.spring.views.AbstractKolichView.VIEW_PAYLOAD;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.kolich.spring.benchmarks.Fixtures.Payload;
+import com.kolich.spring.views.AbstractKolichView;
+import com.kolich.spring.views.mappers.KolichMappingHTMLView;
+import com.kolich.spring.views.mappers.KolichMappingJSONView;
+import com.kolich.spring.views.mappers.KolichMappingPNGView;
+
+/**
+ * The full render path of each of the three Kolich mapping views, for a
+ * range of payload sizes, with and without compression.  Every invocation
+ * renders into a fresh mock response, which shows up in the allocation
+ * rate along with the view's own garbage.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ViewRenderBenchmark {
+	
+	@Param({"json", "html", "png"})
+	public String view;
+	
+	@Param({"128", "16384", "1048576"})
+	public int payloadSize;
+	
+	@Param({"false", "true"})
+	public boolean compression;
+	
+	private AbstractKolichView view_;
+	private Map<String, Object> model_;
+	private MockHttpServletRequest request_;
+	
+	@Setup
+	public void setup() throws Exception {
+		if("json".equals(view)) {
+			view_ = new KolichMappingJSONView();
+		} else if("html".equals(view)) {
+			view_ = new KolichMappingHTMLView();
+		} else {
+			view_ = new KolichMappingPNGView();
+		}
+		view_.setCompression(compression);
+		model_ = Collections.<String, Object>singletonMap(VIEW_PAYLOAD,
+			serializable(new Payload(payloadSize)));
+		request_ = request("GET", "/api/v1/resource", "*/*");
+		request_.addHeader("Accept-Encoding", "gzip, deflate");
+	}
+	
+	@Benchmark
+	public MockHttpServletResponse render() throws Exception {
+		final MockHttpServletResponse response = new MockHttpServletResponse();
+		view_.render(model_, request_, response);
+		return response;
+	}
+	
+}
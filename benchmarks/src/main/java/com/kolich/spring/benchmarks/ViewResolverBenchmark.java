@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.benchmarks;
+
+import static com.kolich.spring.benchmarks.Fixtures.request;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.support.StaticWebApplicationContext;
+import org.springframework.web.servlet.View;
+import org.springframework.web.servlet.ViewResolver;
+
+import com.kolich.spring.views.KolichContentNegotiatingViewResolver;
+import com.kolich.spring.views.mappers.KolichMappingHTMLView;
+import com.kolich.spring.views.mappers.KolichMappingJSONView;
+
+/**
+ * {@link KolichContentNegotiatingViewResolver#resolveViewName} for a
+ * browser-like and an API-like Accept header, with and without the
+ * resolution cache.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ViewResolverBenchmark {
+	
+	private static final String BROWSER_ACCEPT = "text/html,application/" +
+		"xhtml+xml,application/xml;q=0.9,*/*;q=0.8";
+	private static final String API_ACCEPT = "application/json";
+	
+	@Param({"0", "1000"})
+	public long resolutionCacheSize;
+	
+	@Param({"browser", "api"})
+	public String client;
+	
+	private KolichContentNegotiatingViewResolver resolver_;
+	
+	@Setup
+	public void setup() throws Exception {
+		final MockServletContext servletContext = new MockServletContext();
+		final StaticWebApplicationContext context =
+			new StaticWebApplicationContext();
+		context.setServletContext(servletContext);
+		context.refresh();
+		final View json = new KolichMappingJSONView();
+		final View html = new KolichMappingHTMLView();
+		resolver_ = new KolichContentNegotiatingViewResolver();
+		resolver_.setViewResolvers(Arrays.<ViewResolver>asList(
+			new ViewResolver() {
+				@Override
+				public View resolveViewName(final String viewName,
+					final Locale locale) {
+					return "json".equals(viewName) ? json : html;
+				}
+			}));
+		resolver_.setResolutionCacheSize(resolutionCacheSize);
+		resolver_.setApplicationContext(context);
+		resolver_.afterPropertiesSet();
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(
+			request("GET", "/api/v1/resource", "browser".equals(client) ?
+				BROWSER_ACCEPT : API_ACCEPT)));
+	}
+	
+	@TearDown
+	public void tearDown() {
+		RequestContextHolder.resetRequestAttributes();
+	}
+	
+	@Benchmark
+	public View resolve() throws Exception {
+		return resolver_.resolveViewName("json", Locale.US);
+	}
+	
+}
@@ -0,0 +1,259 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.loadtest;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Drives a single URL from a fixed number of connections, each with its
+ * own thread, and records the latency of every request in microseconds.
+ *
+ * In {@link Mode#CLOSED} mode every connection sends its next request as
+ * soon as the previous one completes.  A slow response then silently
+ * holds back all of the requests that connection would have sent in the
+ * meantime (coordinated omission), so the recorded latencies are also
+ * corrected as if requests had been sent at the mean rate.
+ *
+ * In {@link Mode#OPEN} mode requests are sent on a fixed schedule at the
+ * requested rate, spread evenly over the connections, and each latency
+ * is measured from when the request should have been sent, not from when
+ * it actually was.  Time spent queued behind a slow response therefore
+ * counts, and no correction is needed.  The number of connections has to
+ * be large enough to sustain the rate.
+ */
+final class LoadGenerator {
+
+	static enum Mode {
+		CLOSED, OPEN;
+	}
+	
+	private static final int HISTOGRAM_SIGNIFICANT_DIGITS = 3;
+	private static final int READ_BUFFER_SIZE = 8192;
+	
+	private final Mode mode_;
+	private final int connections_;
+	private final double rate_;
+	private final URL url_;
+	private final String accept_;
+	
+	/**
+	 * @param rate total requests per second, {@link Mode#OPEN} only
+	 * @param accept the Accept request header to send, or null for none
+	 */
+	LoadGenerator(final Mode mode, final int connections, final double rate,
+		final URL url, final String accept) {
+		if(connections < 1) {
+			throw new IllegalArgumentException("Need at least one " +
+				"connection: " + connections);
+		}
+		if(mode == Mode.OPEN && !(rate > 0d)) {
+			throw new IllegalArgumentException("Open loop load needs " +
+				"a positive rate: " + rate);
+		}
+		mode_ = mode;
+		connections_ = connections;
+		rate_ = rate;
+		url_ = url;
+		accept_ = accept;
+	}
+	
+	/**
+	 * Runs the load for the warmup period, throws away everything it
+	 * recorded, then runs it again for the measured period.  What the
+	 * given server allocates is only sampled around the measured period.
+	 */
+	LoadReport run(final String name, final long warmupMillis,
+		final long durationMillis, final LoadTestServer server)
+		throws InterruptedException {
+		if(warmupMillis > 0L) {
+			drive(warmupMillis);
+		}
+		final long allocatedBefore = server.getAllocatedBytes();
+		final Worker[] workers = drive(durationMillis);
+		final long allocatedAfter = server.getAllocatedBytes();
+		final Histogram histogram = new Histogram(
+			HISTOGRAM_SIGNIFICANT_DIGITS);
+		final long[] statuses = new long[LoadReport.STATUS_CLASSES];
+		long started = Long.MAX_VALUE, finished = Long.MIN_VALUE;
+		long bytes = 0L;
+		for(final Worker worker : workers) {
+			histogram.add(worker.histogram_);
+			bytes += worker.bytes_;
+			for(int i = 0; i < statuses.length; i++) {
+				statuses[i] += worker.statuses_[i];
+			}
+			started = Math.min(started, worker.started_);
+			finished = Math.max(finished, worker.finished_);
+		}
+		final Histogram corrected;
+		if(mode_ == Mode.CLOSED && histogram.getTotalCount() > 0L) {
+			corrected = histogram.copyCorrectedForCoordinatedOmission(
+				(long)histogram.getMean());
+		} else {
+			corrected = histogram;
+		}
+		return new LoadReport(name, mode_, connections_, rate_,
+			finished - started, statuses, histogram, corrected, bytes,
+			(allocatedBefore < 0L || allocatedAfter < 0L) ? -1L :
+				allocatedAfter - allocatedBefore);
+	}
+	
+	private Worker[] drive(final long durationMillis)
+		throws InterruptedException {
+		// Open loop: consecutive requests of one connection are this far
+		// apart, and the connections are staggered over that interval.
+		final long interval = (mode_ == Mode.OPEN) ?
+			(long)(SECONDS.toNanos(1L) * connections_ / rate_) : 0L;
+		final CountDownLatch ready = new CountDownLatch(connections_);
+		final CountDownLatch go = new CountDownLatch(1);
+		final Worker[] workers = new Worker[connections_];
+		final Thread[] threads = new Thread[connections_];
+		final long[] window = new long[2];
+		for(int i = 0; i < connections_; i++) {
+			final Worker worker = workers[i] = new Worker(
+				interval * i / connections_, interval, ready, go, window);
+			threads[i] = new Thread(worker, "kolich-loadtest-" + i);
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+		ready.await();
+		window[0] = System.nanoTime();
+		window[1] = window[0] + MILLISECONDS.toNanos(durationMillis);
+		// The latch publishes the window to the workers.
+		go.countDown();
+		for(final Thread thread : threads) {
+			thread.join();
+		}
+		return workers;
+	}
+	
+	private final class Worker implements Runnable {
+		
+		private final long offset_;
+		private final long interval_;
+		private final CountDownLatch ready_;
+		private final CountDownLatch go_;
+		private final long[] window_;
+		
+		private final Histogram histogram_ =
+			new Histogram(HISTOGRAM_SIGNIFICANT_DIGITS);
+		private final long[] statuses_ = new long[LoadReport.STATUS_CLASSES];
+		private final byte[] buffer_ = new byte[READ_BUFFER_SIZE];
+		private long bytes_;
+		private long started_;
+		private long finished_;
+		
+		private Worker(final long offset, final long interval,
+			final CountDownLatch ready, final CountDownLatch go,
+			final long[] window) {
+			offset_ = offset;
+			interval_ = interval;
+			ready_ = ready;
+			go_ = go;
+			window_ = window;
+		}
+		
+		@Override
+		public void run() {
+			ready_.countDown();
+			try {
+				go_.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			final long end = window_[1];
+			started_ = window_[0];
+			long intended = started_ + offset_;
+			while(intended < end) {
+				long now;
+				if(interval_ == 0L) {
+					// Closed loop; the next request is due right now.
+					intended = now = System.nanoTime();
+					if(now >= end) {
+						break;
+					}
+				} else {
+					while((now = System.nanoTime()) < intended) {
+						LockSupport.parkNanos(intended - now);
+					}
+				}
+				statuses_[LoadReport.getStatusClass(get())]++;
+				histogram_.recordValue(NANOSECONDS.toMicros(
+					System.nanoTime() - intended));
+				intended += interval_;
+			}
+			finished_ = System.nanoTime();
+		}
+		
+		/**
+		 * Returns the HTTP status code of the response, or zero if the
+		 * request failed altogether.  Reads and closes the response body
+		 * so that the connection is kept alive for the next request.
+		 */
+		private int get() {
+			try {
+				final HttpURLConnection connection =
+					(HttpURLConnection)url_.openConnection();
+				connection.setInstanceFollowRedirects(false);
+				connection.setUseCaches(false);
+				if(accept_ != null) {
+					connection.setRequestProperty("Accept", accept_);
+				}
+				final int status = connection.getResponseCode();
+				final InputStream is = (status >= 400) ?
+					connection.getErrorStream() : connection.getInputStream();
+				if(is != null) {
+					try {
+						int read;
+						while((read = is.read(buffer_)) != -1) {
+							bytes_ += read;
+						}
+					} finally {
+						is.close();
+					}
+				}
+				return status;
+			} catch (IOException e) {
+				return 0;
+			}
+		}
+	
+	}
+
+}
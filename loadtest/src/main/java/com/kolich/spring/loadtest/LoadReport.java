@@ -0,0 +1,204 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.loadtest;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Locale;
+
+import org.HdrHistogram.Histogram;
+
+import com.kolich.spring.loadtest.LoadGenerator.Mode;
+
+/**
+ * Throughput, response status classes, latency percentiles, and what
+ * the server allocated and sent back, of one measured load run.
+ * Latencies are recorded in microseconds and reported in milliseconds.
+ */
+final class LoadReport {
+
+	/**
+	 * Failed requests, then 1xx through 5xx.
+	 */
+	static final int STATUS_CLASSES = 6;
+	
+	private static final double MICROS_PER_MILLI = 1000d;
+	private static final double[] PERCENTILES = {50d, 90d, 99d, 99.9d};
+	
+	private final String name_;
+	private final Mode mode_;
+	private final int connections_;
+	private final double rate_;
+	private final long elapsedNanos_;
+	private final long[] statuses_;
+	private final Histogram recorded_;
+	private final Histogram corrected_;
+	private final long responseBytes_;
+	private final long allocatedBytes_;
+	
+	/**
+	 * @param responseBytes body bytes read from all responses
+	 * @param allocatedBytes bytes the server allocated, or -1 if unknown
+	 */
+	LoadReport(final String name, final Mode mode, final int connections,
+		final double rate, final long elapsedNanos, final long[] statuses,
+		final Histogram recorded, final Histogram corrected,
+		final long responseBytes, final long allocatedBytes) {
+		name_ = name;
+		mode_ = mode;
+		connections_ = connections;
+		rate_ = rate;
+		elapsedNanos_ = elapsedNanos;
+		statuses_ = statuses;
+		recorded_ = recorded;
+		corrected_ = corrected;
+		responseBytes_ = responseBytes;
+		allocatedBytes_ = allocatedBytes;
+	}
+	
+	static final int getStatusClass(final int status) {
+		final int statusClass = status / 100;
+		return (statusClass > 0 && statusClass < STATUS_CLASSES) ?
+			statusClass : 0;
+	}
+	
+	long getRequests() {
+		return recorded_.getTotalCount();
+	}
+	
+	double getThroughput() {
+		return (elapsedNanos_ > 0L) ?
+			getRequests() * (double)SECONDS.toNanos(1L) / elapsedNanos_ : 0d;
+	}
+	
+	/**
+	 * The coordinated omission corrected latency at the given percentile,
+	 * in milliseconds.
+	 */
+	double getLatency(final double percentile) {
+		return corrected_.getValueAtPercentile(percentile) / MICROS_PER_MILLI;
+	}
+	
+	double getResponseBytesPerRequest() {
+		return (getRequests() > 0L) ?
+			responseBytes_ / (double)getRequests() : 0d;
+	}
+	
+	/**
+	 * Bytes the server allocated per request, or a negative number if
+	 * the JVM can't tell.
+	 */
+	double getAllocatedBytesPerRequest() {
+		return (allocatedBytes_ >= 0L && getRequests() > 0L) ?
+			allocatedBytes_ / (double)getRequests() : -1d;
+	}
+	
+	/**
+	 * Describes what this run saved, or cost, compared to the given
+	 * baseline run: throughput, latency, response body and allocation.
+	 */
+	String compareTo(final LoadReport baseline) {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%s vs %s: %.2fx req/s, p50 %+.3f ms, " +
+			"p99 %+.3f ms, %+.0f B/response", name_, baseline.name_,
+			(baseline.getThroughput() > 0d) ?
+				getThroughput() / baseline.getThroughput() : 0d,
+			getLatency(50d) - baseline.getLatency(50d),
+			getLatency(99d) - baseline.getLatency(99d),
+			getResponseBytesPerRequest() -
+				baseline.getResponseBytesPerRequest()));
+		if(getAllocatedBytesPerRequest() >= 0d &&
+			baseline.getAllocatedBytesPerRequest() >= 0d) {
+			sb.append(String.format(", %+.0f B allocated/request",
+				getAllocatedBytesPerRequest() -
+					baseline.getAllocatedBytesPerRequest()));
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Writes the full percentile distribution of the corrected latencies,
+	 * in milliseconds, in the HdrHistogram text format that the usual
+	 * plotting tools understand.
+	 */
+	void writeDistribution(final File file) throws IOException {
+		final PrintStream out = new PrintStream(new FileOutputStream(file));
+		try {
+			corrected_.outputPercentileDistribution(out, MICROS_PER_MILLI);
+		} finally {
+			out.close();
+		}
+	}
+	
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%s: %s loop, %d connections",
+			name_, mode_.name().toLowerCase(Locale.ENGLISH), connections_));
+		if(mode_ == Mode.OPEN) {
+			sb.append(String.format(", %.0f req/s target", rate_));
+		}
+		sb.append(String.format("%n  %d requests in %.2fs, %.1f req/s%n",
+			getRequests(), elapsedNanos_ / (double)SECONDS.toNanos(1L),
+			getThroughput()));
+		sb.append(String.format("  status  1xx=%d 2xx=%d 3xx=%d 4xx=%d " +
+			"5xx=%d failed=%d%n", statuses_[1], statuses_[2], statuses_[3],
+			statuses_[4], statuses_[5], statuses_[0]));
+		sb.append(String.format("  server  %.0f B/response",
+			getResponseBytesPerRequest()));
+		if(getAllocatedBytesPerRequest() >= 0d) {
+			sb.append(String.format(", %.0f B allocated/request",
+				getAllocatedBytesPerRequest()));
+		}
+		sb.append(String.format("%n"));
+		sb.append(String.format("  %-12s%10s%10s%10s%10s%10s%n",
+			"latency ms", "p50", "p90", "p99", "p999", "max"));
+		if(mode_ == Mode.CLOSED) {
+			appendLatencies(sb, "recorded", recorded_);
+			appendLatencies(sb, "corrected", corrected_);
+		} else {
+			appendLatencies(sb, "intended", corrected_);
+		}
+		return sb.toString();
+	}
+	
+	private static final void appendLatencies(final StringBuilder sb,
+		final String label, final Histogram histogram) {
+		sb.append(String.format("  %-12s", label));
+		for(final double percentile : PERCENTILES) {
+			sb.append(String.format("%10.3f",
+				histogram.getValueAtPercentile(percentile) / MICROS_PER_MILLI));
+		}
+		sb.append(String.format("%10.3f%n",
+			histogram.getMaxValue() / MICROS_PER_MILLI));
+	}
+
+}
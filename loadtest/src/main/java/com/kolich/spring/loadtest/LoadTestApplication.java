@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.loadtest;
+
+import java.util.Arrays;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.web.servlet.View;
+import org.springframework.web.servlet.ViewResolver;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+import org.springframework.web.servlet.view.BeanNameViewResolver;
+
+import com.kolich.spring.interceptors.RequestPathInterceptor;
+import com.kolich.spring.interceptors.RequestPathInterceptor.RejectionStrategy;
+import com.kolich.spring.views.KolichContentNegotiatingViewResolver;
+import com.kolich.spring.views.mappers.KolichMappingHTMLView;
+import com.kolich.spring.views.mappers.KolichMappingJSONView;
+import com.kolich.spring.views.mappers.KolichMappingPNGView;
+
+/**
+ * The sample app under load: a {@link RequestPathInterceptor} in front of
+ * every handler, and a {@link KolichContentNegotiatingViewResolver} over
+ * the three mapping views, wired the way a real app would wire them.
+ */
+@Configuration
+@EnableWebMvc
+public class LoadTestApplication extends WebMvcConfigurerAdapter {
+
+	static final String JSON_VIEW = "json";
+	static final String HTML_VIEW = "html";
+	static final String PNG_VIEW = "png";
+	static final String NOT_FOUND_VIEW = "errors/404-not-found";
+	
+	/**
+	 * System property that, when true, turns on prerendered error views.
+	 */
+	static final String PRERENDER_PROPERTY = "kolich.loadtest.prerender";
+	private static final long ERROR_VIEW_CACHE_SIZE = 16L;
+	
+	@Override
+	public void addInterceptors(final InterceptorRegistry registry) {
+		registry.addInterceptor(requestPathInterceptor());
+	}
+	
+	@Bean
+	public RequestPathInterceptor requestPathInterceptor() {
+		final RequestPathInterceptor interceptor =
+			new RequestPathInterceptor();
+		interceptor.setRequestMappings(Arrays.asList(
+			"GET:^https?://[^/]+/api/(json|html|png)$",
+			"GET:^https?://[^/]+/api/missing/.*$"));
+		// Scanner traffic gets a cheap 404, not an exception.
+		interceptor.setRejectionStrategy(RejectionStrategy.STATUS);
+		return interceptor;
+	}
+	
+	@Bean
+	public ViewResolver viewResolver() {
+		final KolichContentNegotiatingViewResolver resolver =
+			new KolichContentNegotiatingViewResolver();
+		resolver.setViewResolvers(Arrays.<ViewResolver>asList(
+			beanNameViewResolver()));
+		resolver.setGlobalDefaultView(NOT_FOUND_VIEW);
+		if(Boolean.getBoolean(PRERENDER_PROPERTY)) {
+			resolver.setErrorViewCacheSize(ERROR_VIEW_CACHE_SIZE);
+		}
+		return resolver;
+	}
+	
+	@Bean
+	public BeanNameViewResolver beanNameViewResolver() {
+		final BeanNameViewResolver resolver = new BeanNameViewResolver();
+		resolver.setOrder(Ordered.LOWEST_PRECEDENCE);
+		return resolver;
+	}
+	
+	@Bean(name=JSON_VIEW)
+	public View jsonView() {
+		return new KolichMappingJSONView();
+	}
+	
+	@Bean(name=HTML_VIEW)
+	public View htmlView() {
+		return new KolichMappingHTMLView();
+	}
+	
+	@Bean(name=PNG_VIEW)
+	public View pngView() {
+		return new KolichMappingPNGView();
+	}
+	
+	@Bean(name=NOT_FOUND_VIEW)
+	public View notFoundView() {
+		return new KolichMappingHTMLView();
+	}
+	
+	@Bean
+	public LoadTestController loadTestController() {
+		return new LoadTestController();
+	}
+
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.loadtest;
+
+import static com.kolich.spring.loadtest.LoadTestApplication.HTML_VIEW;
+import static com.kolich.spring.loadtest.LoadTestApplication.JSON_VIEW;
+import static com.kolich.spring.loadtest.LoadTestApplication.NOT_FOUND_VIEW;
+import static com.kolich.spring.loadtest.LoadTestApplication.PNG_VIEW;
+import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
+import static org.springframework.web.bind.annotation.RequestMethod.GET;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.servlet.ModelAndView;
+
+import com.kolich.common.entities.KolichCommonEntity;
+import com.kolich.spring.controllers.KolichControllerClosure;
+import com.kolich.spring.views.KolichViewSerializable;
+
+@Controller
+public class LoadTestController {
+
+	private static final Logger logger__ =
+		LoggerFactory.getLogger(LoadTestController.class);
+	
+	private static final int ENTITY_SIZE = 2048;
+	private static final int IMAGE_SIZE = 16384;
+	
+	private static final Filler entity__ = new Filler(ENTITY_SIZE);
+	private static final byte[] image__ = new byte[IMAGE_SIZE];
+	static {
+		new Random(IMAGE_SIZE).nextBytes(image__);
+	}
+	
+	@RequestMapping(value="/api/json", method=GET)
+	public ModelAndView json() {
+		return new KolichControllerClosure<ModelAndView>("GET:/api/json",
+			logger__) {
+			@Override
+			public ModelAndView doit() throws Exception {
+				return getModelAndView(JSON_VIEW, entity__);
+			}
+		}.execute();
+	}
+	
+	@RequestMapping(value="/api/html", method=GET)
+	public ModelAndView html() {
+		return new KolichControllerClosure<ModelAndView>("GET:/api/html",
+			logger__) {
+			@Override
+			public ModelAndView doit() throws Exception {
+				return getModelAndView(HTML_VIEW, entity__);
+			}
+		}.execute();
+	}
+	
+	@RequestMapping(value="/api/png", method=GET)
+	public ModelAndView png() {
+		return new KolichControllerClosure<ModelAndView>("GET:/api/png",
+			logger__) {
+			@Override
+			public ModelAndView doit() throws Exception {
+				return getModelAndView(PNG_VIEW, new KolichViewSerializable() {
+					@Override
+					public KolichCommonEntity getEntity() {
+						return entity__;
+					}
+					@Override
+					public boolean isStreaming() {
+						return true;
+					}
+					@Override
+					public void writeEntity(final OutputStream os)
+						throws Exception {
+						os.write(image__);
+					}
+					@Override
+					public long getContentLength() {
+						return image__.length;
+					}
+				});
+			}
+		}.execute();
+	}
+	
+	/**
+	 * Everything else.  Requests the request path interceptor lets
+	 * through get the error view; the rest never make it this far.
+	 */
+	@RequestMapping(value="/**")
+	public ModelAndView notFound(final HttpServletResponse response) {
+		return new KolichControllerClosure<ModelAndView>("GET:/**",
+			logger__) {
+			@Override
+			public ModelAndView doit() throws Exception {
+				response.setStatus(SC_NOT_FOUND);
+				return getModelAndView(NOT_FOUND_VIEW, entity__);
+			}
+		}.execute();
+	}
+	
+	/**
+	 * What every handler here serves: nothing but a run of filler, sized
+	 * so a render costs about what a typical real entity's would.
+	 */
+	private static final class Filler extends KolichCommonEntity {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final String data_;
+		
+		private Filler(final int size) {
+			final char[] data = new char[size];
+			Arrays.fill(data, 'k');
+			data_ = new String(data);
+		}
+		
+		@Override
+		public boolean equals(final Object obj) {
+			return obj instanceof Filler &&
+				((Filler)obj).data_.equals(data_);
+		}
+		
+		@Override
+		public int hashCode() {
+			return data_.hashCode();
+		}
+	
+	}
+
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.loadtest;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.kolich.spring.loadtest.LoadGenerator.Mode;
+
+/**
+ * Boots the {@link LoadTestServer}, puts each scenario under load in turn
+ * and prints a throughput and latency report for each.  Options are all
+ * of the form <pre>--name=value</pre>:
+ *
+ * <pre>
+ * --mode         closed (default) or open
+ * --connections  concurrent connections, default 16
+ * --rate         total requests per second, open loop only
+ * --warmup       seconds of unmeasured load first, default 10
+ * --duration     seconds of measured load, default 30
+ * --scenarios    comma separated, default all of them
+ * --threads      max Jetty worker threads, default 200
+ * --port         default 0, any free port
+ * --prerender    true to prerender error views, default false
+ * --out          where the latency distributions go, default target
+ * </pre>
+ */
+public final class LoadTestRunner {
+
+	/**
+	 * What each scenario requests, and what it exercises.  A scenario
+	 * with a baseline is also reported against it, if both were run.
+	 */
+	private static enum Scenario {
+		
+		// Negotiated views.
+		JSON("/api/json", "application/json"),
+		HTML("/api/html", "text/html"),
+		PNG("/api/png", "image/png"),
+		// An allowed path with no real handler, rendered as an error view.
+		ERROR("/api/missing/page", "text/html"),
+		// Redirected by the filter before it gets anywhere near Spring;
+		// against the full render it skips.
+		JSESSIONID("/api/json;jsessionid=0123456789ABCDEF", "application/json",
+			false, JSON),
+		// Sessions tracked with cookies only, so the filter never wraps
+		// the response; against the wrapped JSON.
+		JSON_COOKIE("/api/json", "application/json", true, JSON),
+		// Turned away by the interceptor; scanner traffic.
+		REJECTED("/wp-login.php", null);
+		
+		private final String path_;
+		private final String accept_;
+		private final boolean cookieOnly_;
+		private final Scenario baseline_;
+		
+		private Scenario(final String path, final String accept) {
+			this(path, accept, false, null);
+		}
+		
+		private Scenario(final String path, final String accept,
+			final boolean cookieOnly, final Scenario baseline) {
+			path_ = path;
+			accept_ = accept;
+			cookieOnly_ = cookieOnly;
+			baseline_ = baseline;
+		}
+	
+	}
+	
+	// Cannot instantiate.
+	private LoadTestRunner() {}
+	
+	public static void main(final String[] args) throws Exception {
+		final Map<String, String> options = parseOptions(args);
+		final Mode mode = Mode.valueOf(getOption(options, "mode",
+			"closed").toUpperCase(Locale.ENGLISH));
+		final int connections = Integer.parseInt(getOption(options,
+			"connections", "16"));
+		final double rate = Double.parseDouble(getOption(options,
+			"rate", "0"));
+		final long warmup = SECONDS.toMillis(Long.parseLong(getOption(options,
+			"warmup", "10")));
+		final long duration = SECONDS.toMillis(Long.parseLong(getOption(
+			options, "duration", "30")));
+		final int threads = Integer.parseInt(getOption(options,
+			"threads", "200"));
+		final int port = Integer.parseInt(getOption(options, "port", "0"));
+		final File out = new File(getOption(options, "out", "target"));
+		System.setProperty(LoadTestApplication.PRERENDER_PROPERTY,
+			getOption(options, "prerender", "false"));
+		final List<Scenario> scenarios = new ArrayList<Scenario>();
+		final String names;
+		if((names = options.get("scenarios")) == null) {
+			for(final Scenario scenario : Scenario.values()) {
+				scenarios.add(scenario);
+			}
+		} else {
+			for(final String name : names.split(",")) {
+				scenarios.add(Scenario.valueOf(
+					name.trim().toUpperCase(Locale.ENGLISH)));
+			}
+		}
+		// The JDK only keeps this many idle connections per host alive,
+		// anything beyond that would reconnect on every request.
+		System.setProperty("http.maxConnections",
+			Integer.toString(connections));
+		// The filter decides whether to wrap responses once, at startup,
+		// so cookie only tracking needs a server of its own.
+		final LoadTestServer server = new LoadTestServer(port, threads,
+			false);
+		final LoadTestServer cookieServer = new LoadTestServer(0, threads,
+			true);
+		try {
+			server.start();
+			cookieServer.start();
+			final List<LoadReport> reports = new ArrayList<LoadReport>();
+			final Map<Scenario, LoadReport> byScenario =
+				new EnumMap<Scenario, LoadReport>(Scenario.class);
+			out.mkdirs();
+			for(final Scenario scenario : scenarios) {
+				final String name = scenario.name().toLowerCase(Locale.ENGLISH);
+				final LoadTestServer target = (scenario.cookieOnly_) ?
+					cookieServer : server;
+				final LoadGenerator generator = new LoadGenerator(mode,
+					connections, rate, new URL(target.getBaseUrl() +
+						scenario.path_), scenario.accept_);
+				final LoadReport report = generator.run(name, warmup,
+					duration, target);
+				System.out.println(report);
+				report.writeDistribution(new File(out, "loadtest-" + name +
+					"-" + mode.name().toLowerCase(Locale.ENGLISH) + ".hgrm"));
+				reports.add(report);
+				byScenario.put(scenario, report);
+			}
+			System.out.println(String.format("%-12s%12s%10s%10s%10s",
+				"scenario", "req/s", "p50 ms", "p99 ms", "p999 ms"));
+			for(int i = 0; i < reports.size(); i++) {
+				final LoadReport report = reports.get(i);
+				System.out.println(String.format(
+					"%-12s%12.1f%10.3f%10.3f%10.3f", scenarios.get(i).name()
+					.toLowerCase(Locale.ENGLISH), report.getThroughput(),
+					report.getLatency(50d), report.getLatency(99d),
+					report.getLatency(99.9d)));
+			}
+			for(int i = 0; i < reports.size(); i++) {
+				final Scenario baseline = scenarios.get(i).baseline_;
+				final LoadReport against;
+				if(baseline != null &&
+					(against = byScenario.get(baseline)) != null) {
+					System.out.println(reports.get(i).compareTo(against));
+				}
+			}
+		} finally {
+			cookieServer.stop();
+			server.stop();
+		}
+	}
+	
+	private static final Map<String, String> parseOptions(
+		final String[] args) {
+		final Map<String, String> options = new HashMap<String, String>();
+		for(final String arg : args) {
+			final int equals;
+			if(!arg.startsWith("--") || (equals = arg.indexOf('=')) < 0) {
+				throw new IllegalArgumentException("Expected an option " +
+					"of the form --name=value: " + arg);
+			}
+			options.put(arg.substring(2, equals), arg.substring(equals + 1));
+		}
+		return options;
+	}
+	
+	private static final String getOption(final Map<String, String> options,
+		final String name, final String defaultValue) {
+		final String value;
+		return ((value = options.get(name)) != null) ? value : defaultValue;
+	}
+
+}
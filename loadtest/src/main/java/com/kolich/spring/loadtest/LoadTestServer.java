@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.loadtest;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.EnumSet;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.SessionTrackingMode;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import org.springframework.web.servlet.DispatcherServlet;
+
+import com.kolich.spring.filters.JSessionIdsSuckSoRemoveThemFilter;
+
+/**
+ * An embedded Jetty serving the {@link LoadTestApplication} behind a
+ * {@link JSessionIdsSuckSoRemoveThemFilter}, on the loopback interface.
+ */
+final class LoadTestServer {
+
+	private static final String LOOPBACK = "127.0.0.1";
+	private static final String THREAD_NAME_PREFIX = "kolich-loadtest-server";
+	
+	private static int servers__ = 0;
+	
+	private final Server server_;
+	private final ServerConnector connector_;
+	private final String threadName_;
+	
+	/**
+	 * @param cookieOnly true to only ever track sessions with cookies, so
+	 * that the filter sees no URL tracking and never wraps a response
+	 */
+	LoadTestServer(final int port, final int maxThreads,
+		final boolean cookieOnly) {
+		final QueuedThreadPool pool = new QueuedThreadPool(maxThreads);
+		synchronized(LoadTestServer.class) {
+			threadName_ = THREAD_NAME_PREFIX + "-" + servers__++;
+		}
+		pool.setName(threadName_);
+		server_ = new Server(pool);
+		connector_ = new ServerConnector(server_);
+		connector_.setHost(LOOPBACK);
+		connector_.setPort(port);
+		server_.addConnector(connector_);
+		// Sessions on, so that the container tracks session ID's in
+		// URL's and the filter has something to do.
+		final ServletContextHandler handler =
+			new ServletContextHandler(ServletContextHandler.SESSIONS);
+		if(cookieOnly) {
+			handler.getSessionHandler().getSessionManager()
+				.setSessionTrackingModes(EnumSet.of(SessionTrackingMode.COOKIE));
+		}
+		handler.setContextPath("/");
+		handler.addFilter(new FilterHolder(
+			new JSessionIdsSuckSoRemoveThemFilter()), "/*",
+			EnumSet.of(DispatcherType.REQUEST));
+		final AnnotationConfigWebApplicationContext context =
+			new AnnotationConfigWebApplicationContext();
+		context.register(LoadTestApplication.class);
+		final ServletHolder dispatcher = new ServletHolder(
+			new DispatcherServlet(context));
+		// Fail at startup, not on the first request under load.
+		dispatcher.setInitOrder(1);
+		handler.addServlet(dispatcher, "/");
+		server_.setHandler(handler);
+	}
+	
+	void start() throws Exception {
+		server_.start();
+	}
+	
+	void stop() throws Exception {
+		server_.stop();
+	}
+	
+	/**
+	 * The base URL of the running server, without a trailing slash.
+	 */
+	String getBaseUrl() {
+		return "http://" + LOOPBACK + ":" + connector_.getLocalPort();
+	}
+	
+	/**
+	 * Bytes allocated so far by the live worker threads of this server,
+	 * or -1 if the JVM can't tell.  Only differences between two calls
+	 * mean anything, and only while no workers come or go in between.
+	 */
+	long getAllocatedBytes() {
+		final java.lang.management.ThreadMXBean threads =
+			ManagementFactory.getThreadMXBean();
+		if(!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return -1L;
+		}
+		final com.sun.management.ThreadMXBean sun =
+			(com.sun.management.ThreadMXBean)threads;
+		if(!sun.isThreadAllocatedMemorySupported() ||
+			!sun.isThreadAllocatedMemoryEnabled()) {
+			return -1L;
+		}
+		long allocated = 0L;
+		for(final ThreadInfo info : sun.getThreadInfo(
+			sun.getAllThreadIds())) {
+			if(info != null && info.getThreadName().startsWith(
+				threadName_ + "-")) {
+				allocated += Math.max(0L, sun.getThreadAllocatedBytes(
+					info.getThreadId()));
+			}
+		}
+		return allocated;
+	}
+
+}
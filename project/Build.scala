@@ -37,7 +37,7 @@ object Dependencies {
 
   private val slf4j = "org.slf4j" % "slf4j-api" % "1.7.2" % "compile"
 
-  private val servletApi = "javax.servlet" % "javax.servlet-api" % "3.0.1" % "provided" // Provided by container
+  private val servletApi = "javax.servlet" % "javax.servlet-api" % "3.1.0" % "provided" // Provided by container
   private val jspApi = "javax.servlet.jsp" % "jsp-api" % "2.2" % "provided" // Provided by container
 
   private val springWeb = "org.springframework" % "spring-web" % "3.2.6.RELEASE" % "compile"
@@ -54,6 +54,55 @@ object Dependencies {
     springWeb, springMvc,
     commonsIo)
 
+  // Test dependencies
+
+  private val junit = "junit" % "junit" % "4.11" % "test"
+  private val junitInterface = "com.novocode" % "junit-interface" % "0.10" % "test" // Runs JUnit tests from SBT
+
+  // Mock request, response, servlet and page contexts.
+  private val testSpringTest = "org.springframework" % "spring-test" % "3.2.6.RELEASE" % "test"
+
+  // Embedded container for tests that need real sockets.
+  private val testJettyServer = "org.eclipse.jetty" % "jetty-server" % "9.2.29.v20191105" % "test"
+  private val testJettyServlet = "org.eclipse.jetty" % "jetty-servlet" % "9.2.29.v20191105" % "test"
+
+  val testDeps = Seq(
+    junit, junitInterface,
+    testSpringTest,
+    testJettyServer, testJettyServlet)
+
+  // Benchmark dependencies
+
+  private val jmhCore = "org.openjdk.jmh" % "jmh-core" % "1.21" % "compile"
+  private val jmhAnnProcess = "org.openjdk.jmh" % "jmh-generator-annprocess" % "1.21" % "compile"
+
+  // Mock request, response, servlet and page contexts.
+  private val springTest = "org.springframework" % "spring-test" % "3.2.6.RELEASE" % "compile"
+
+  // The benchmarks run outside of a container, so they need the APIs themselves.
+  private val benchServletApi = "javax.servlet" % "javax.servlet-api" % "3.1.0" % "compile"
+  private val benchJspApi = "javax.servlet.jsp" % "jsp-api" % "2.2" % "compile"
+
+  val benchmarkDeps = Seq(
+    jmhCore, jmhAnnProcess,
+    springTest,
+    benchServletApi, benchJspApi)
+
+  // Load test dependencies
+
+  private val jettyServer = "org.eclipse.jetty" % "jetty-server" % "9.2.29.v20191105" % "compile"
+  private val jettyServlet = "org.eclipse.jetty" % "jetty-servlet" % "9.2.29.v20191105" % "compile"
+
+  private val hdrHistogram = "org.hdrhistogram" % "HdrHistogram" % "2.1.9" % "compile"
+
+  private val slf4jSimple = "org.slf4j" % "slf4j-simple" % "1.7.2" % "runtime"
+
+  val loadTestDeps = Seq(
+    jettyServer, jettyServlet,
+    hdrHistogram,
+    slf4jSimple,
+    benchServletApi, benchJspApi)
+
 }
 
 object Resolvers {
@@ -78,6 +127,8 @@ object Spring extends Build {
   */
 
   private val aName = "kolich-spring"
+  private val bName = aName + "-benchmarks"
+  private val lName = aName + "-loadtest"
   private val aVer = "0.0.8"
   private val aOrg = "com.kolich"
 
@@ -149,7 +200,7 @@ object Spring extends Build {
       artifactPath in (Test, packageBin) ~= { defaultPath =>
         file("dist") / "test" / defaultPath.getName
       },
-      libraryDependencies ++= deps,
+      libraryDependencies ++= deps ++ testDeps,
       retrieveManaged := true)/* ++
       Seq(EclipseKeys.createSrc := EclipseCreateSrc.Default,
         // Make sure SBT also fetches/loads the "src" (source) JAR's for
@@ -172,4 +223,50 @@ object Spring extends Build {
           }
         })*/)*/)
 
+  // JMH benchmarks of the request path components; never published, only
+  // run.  The JMH annotation processor generates the harness at compile
+  // time.  From SBT: "project kolich-spring-benchmarks" then "run", with
+  // any of the usual JMH options.  Results land in benchmarks/target.
+  lazy val benchmarks: Project = Project(
+    bName,
+    new File("benchmarks"),
+    settings = Defaults.defaultSettings ++ Seq(resolvers := depResolvers) ++ Seq(
+      version := aVer,
+      organization := aOrg,
+      scalaVersion := "2.9.2",
+      javacOptions ++= Seq("-Xlint", "-g"),
+      shellPrompt := { (state: State) => { "%s:%s> ".format(bName, aVer) } },
+      crossPaths := false,
+      autoScalaLibrary := false,
+      unmanagedSourceDirectories in Compile <<= baseDirectory(new File(_, "src/main/java"))(Seq(_)),
+      unmanagedSourceDirectories in Test := Seq(),
+      publishArtifact := false,
+      // JMH forks its own benchmark JVMs off of the classpath of this one.
+      fork in run := true,
+      mainClass in (Compile, run) := Some("com.kolich.spring.benchmarks.BenchmarkRunner"),
+      libraryDependencies ++= benchmarkDeps)) dependsOn(spring)
+
+  // End-to-end load test of a sample app on an embedded Jetty; never
+  // published, only run.  From SBT: "project kolich-spring-loadtest" then
+  // "run", with any options of the LoadTestRunner.  Latency distributions
+  // land in loadtest/target.
+  lazy val loadtest: Project = Project(
+    lName,
+    new File("loadtest"),
+    settings = Defaults.defaultSettings ++ Seq(resolvers := depResolvers) ++ Seq(
+      version := aVer,
+      organization := aOrg,
+      scalaVersion := "2.9.2",
+      javacOptions ++= Seq("-Xlint", "-g"),
+      shellPrompt := { (state: State) => { "%s:%s> ".format(lName, aVer) } },
+      crossPaths := false,
+      autoScalaLibrary := false,
+      unmanagedSourceDirectories in Compile <<= baseDirectory(new File(_, "src/main/java"))(Seq(_)),
+      unmanagedSourceDirectories in Test := Seq(),
+      publishArtifact := false,
+      // Keep the server and the load generator out of the SBT JVM.
+      fork in run := true,
+      mainClass in (Compile, run) := Some("com.kolich.spring.loadtest.LoadTestRunner"),
+      libraryDependencies ++= loadTestDeps)) dependsOn(spring)
+
 }
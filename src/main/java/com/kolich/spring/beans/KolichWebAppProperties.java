@@ -1,23 +1,135 @@
 package com.kolich.spring.beans;
 
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 
+import com.google.common.collect.MapDifference;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
 import com.kolich.spring.exceptions.KolichSpringException;
 
-public abstract class KolichWebAppProperties implements InitializingBean {
+public abstract class KolichWebAppProperties
+	implements InitializingBean, DisposableBean {
+	
+	private static final Logger logger__ =
+		LoggerFactory.getLogger(KolichWebAppProperties.class);
+	
+	/**
+	 * Something interested in changes to a reloadable set of
+	 * properties, see {@link KolichWebAppProperties#setReloadableFile}.
+	 */
+	public static interface PropertiesChangeListener {
+		
+		/**
+		 * Called on the watcher thread, right after a new snapshot of
+		 * the properties was published.
+		 */
+		public void propertiesChanged(
+			final MapDifference<String, Object> difference);
+		
+	}
+		
+	/**
+	 * Suffixes understood by {@link #getDuration(String, TimeUnit, long)}.
+	 * Longest first, so that "ms" is not mistaken for "s".
+	 */
+	private static final String[] DURATION_SUFFIXES =
+		{"ms", "us", "ns", "d", "h", "m", "s"};
+	private static final TimeUnit[] DURATION_UNITS =
+		{MILLISECONDS, MICROSECONDS, NANOSECONDS, DAYS, HOURS, MINUTES,
+		SECONDS};
+	
+	private static final long DEFAULT_RELOAD_QUIET_PERIOD_MS = 500L;
+	
+	/**
+	 * An immutable copy of the properties that are set once on Spring
+	 * startup then never set again (or, at least, we never let the
+	 * caller set these properties later) unless reloadable, along with
+	 * the typed values converted from them so far.
+	 */
+	private static final class Snapshot {
+		
+		private final Map<String, Object> values_;
+		
+		private final ConcurrentMap<String, Integer> ints_ =
+			new ConcurrentHashMap<String, Integer>();
+		private final ConcurrentMap<String, Long> longs_ =
+			new ConcurrentHashMap<String, Long>();
+		private final ConcurrentMap<String, Boolean> booleans_ =
+			new ConcurrentHashMap<String, Boolean>();
+		/**
+		 * Durations given with a unit suffix, in nanoseconds.  Plain
+		 * numbers are in whatever unit the caller asks for, so those
+		 * are kept as is with the other longs.
+		 */
+		private final ConcurrentMap<String, Long> durations_ =
+			new ConcurrentHashMap<String, Long>();
 		
+		private Snapshot(final Map<String, Object> values) {
+			values_ = values;
+		}
+		
+	}
+	
+	/**
+	 * Published by {@link #setProperties(Map)}, and again on every reload
+	 * if reloadable; reads never lock, they only pay a volatile read.
+	 */
+	private volatile Snapshot snapshot_ =
+		new Snapshot(Collections.<String, Object>emptyMap());
+	
+	/**
+	 * The properties given to {@link #setProperties(Map)}, and those last
+	 * loaded from the reloadable file, if any, which override them.
+	 * Only touched while holding the lock on this instance.
+	 */
+	private Map<String, Object> base_ = Collections.emptyMap();
+	private Map<String, Object> loaded_ = Collections.emptyMap();
+	
+	private File reloadableFile_ = null;
 	/**
-	 * An internal list of properties that are set once on Spring startup
-	 * then never set again (or, at least, we never let the caller set
-	 * these properties later).
+	 * How long, in milliseconds, the directory of the reloadable file has
+	 * to be quiet after a change before the file is reloaded.
 	 */
-	private final Map<String, Object> properties_ =
-		Collections.synchronizedMap(new HashMap<String, Object>());
+	private volatile long reloadQuietPeriod_ = DEFAULT_RELOAD_QUIET_PERIOD_MS;
+	private WatchService watcher_ = null;
+	private final List<PropertiesChangeListener> listeners_ =
+		new CopyOnWriteArrayList<PropertiesChangeListener>();
 	
 	/**
 	 * Keeps track of our properties map and if it has already been
@@ -33,47 +145,337 @@ public abstract class KolichWebAppProperties implements InitializingBean {
 	 * given name.  If no property with the given name exits, this method
 	 * returns null.  The caller should know what type of Object is returned
 	 * (what is it an instance of) then cast it later when the value is
-	 * actually needed for something useful.
+	 * actually needed for something useful.  Like the other getters, each
+	 * call reads whatever was last loaded, so with a reloadable file two
+	 * calls in the same request can straddle a reload; only the map from
+	 * {@link #getProperties()} is guaranteed to stay put.
 	 * @param name the name of the property to fetch.  These
 	 * properties are set in beans.xml inside of our Spring
 	 * configuration XML.
 	 * @return
 	 */
 	public Object getProperty(final String name) {
-		return properties_.get(name);
+		return snapshot_.values_.get(name);
+	}
+	
+	/**
+	 * Returns the property with the given name as a String, or null if
+	 * no property with the given name exists.
+	 */
+	public String getString(final String name) {
+		final Object value;
+		return ((value = getProperty(name)) != null) ?
+			value.toString() : null;
+	}
+	
+	/**
+	 * Returns the property with the given name as an int, or the given
+	 * default if no property with the given name exists.  The value is
+	 * only ever parsed once.
+	 */
+	public int getInt(final String name, final int defaultValue) {
+		final Snapshot snapshot = snapshot_;
+		Integer converted;
+		if((converted = snapshot.ints_.get(name)) == null) {
+			final Object value;
+			if((value = snapshot.values_.get(name)) == null) {
+				return defaultValue;
+			}
+			converted = toInt(name, value);
+			snapshot.ints_.putIfAbsent(name, converted);
+		}
+		return converted;
+	}
+	
+	/**
+	 * Returns the property with the given name as a long, or the given
+	 * default if no property with the given name exists.  The value is
+	 * only ever parsed once.
+	 */
+	public long getLong(final String name, final long defaultValue) {
+		final Snapshot snapshot = snapshot_;
+		Long converted;
+		if((converted = snapshot.longs_.get(name)) == null) {
+			final Object value;
+			if((value = snapshot.values_.get(name)) == null) {
+				return defaultValue;
+			}
+			converted = toLong(name, value);
+			snapshot.longs_.putIfAbsent(name, converted);
+		}
+		return converted;
+	}
+	
+	/**
+	 * Returns the property with the given name as a boolean, or the given
+	 * default if no property with the given name exists.  Only "true"
+	 * (ignoring case) is true.
+	 */
+	public boolean getBoolean(final String name, final boolean defaultValue) {
+		final Snapshot snapshot = snapshot_;
+		Boolean converted;
+		if((converted = snapshot.booleans_.get(name)) == null) {
+			final Object value;
+			if((value = snapshot.values_.get(name)) == null) {
+				return defaultValue;
+			}
+			converted = (value instanceof Boolean) ? (Boolean)value :
+				Boolean.valueOf(value.toString().trim());
+			snapshot.booleans_.putIfAbsent(name, converted);
+		}
+		return converted;
+	}
+	
+	/**
+	 * Returns the property with the given name as a duration in the given
+	 * unit, or the given default if no property with the given name
+	 * exists.  Values look like "500ms", "30s", "5m", "2h" or "1d"; a
+	 * plain number is taken to already be in the given unit.
+	 */
+	public long getDuration(final String name, final TimeUnit unit,
+		final long defaultValue) {
+		final Snapshot snapshot = snapshot_;
+		Long converted;
+		if((converted = snapshot.durations_.get(name)) != null) {
+			return unit.convert(converted, NANOSECONDS);
+		} else if((converted = snapshot.longs_.get(name)) != null) {
+			return converted;
+		}
+		final Object value;
+		if((value = snapshot.values_.get(name)) == null) {
+			return defaultValue;
+		} else if((converted = toNanos(name, value)) == null) {
+			// No unit suffix, already in the given unit.
+			return getLong(name, defaultValue);
+		}
+		snapshot.durations_.putIfAbsent(name, converted);
+		return unit.convert(converted, NANOSECONDS);
+	}
+	
+	private static final long toLong(final String name, final Object value) {
+		if(value instanceof Number) {
+			return ((Number)value).longValue();
+		}
+		try {
+			return Long.parseLong(value.toString().trim());
+		} catch (NumberFormatException e) {
+			throw new KolichSpringException("Property '" + name + "' " +
+				"is not a number: " + value, e);
+		}
+	}
+	
+	private static final int toInt(final String name, final Object value) {
+		try {
+			return Ints.checkedCast(toLong(name, value));
+		} catch (IllegalArgumentException e) {
+			throw new KolichSpringException("Property '" + name + "' " +
+				"is out of range of an int: " + value, e);
+		}
+	}
+	
+	/**
+	 * Converts a duration with a unit suffix to nanoseconds, or returns
+	 * null if the given value has no unit suffix.
+	 */
+	private static final Long toNanos(final String name, final Object value) {
+		if(value instanceof Number) {
+			return null;
+		}
+		final String duration = value.toString().trim().toLowerCase(Locale.ENGLISH);
+		for(int i = 0; i < DURATION_SUFFIXES.length; i++) {
+			if(duration.endsWith(DURATION_SUFFIXES[i])) {
+				return DURATION_UNITS[i].toNanos(toLong(name,
+					duration.substring(0, duration.length() -
+						DURATION_SUFFIXES[i].length())));
+			}
+		}
+		return null;
 	}
 		
 	/**
 	 * Called by Spring when this bean is first instantiated.  If you
 	 * attempt to call this method again later, you'll get a nice
 	 * {@link TwitterFeedException} complaining about your folly.
-	 * How's that sound?
+	 * How's that sound?  The given map is copied, and frozen; later
+	 * changes to it are not seen.
 	 * @param properties
 	 */
-	public void setProperties(Map<String, Object> properties) {
+	public synchronized void setProperties(Map<String, Object> properties) {
 		if(alreadySet_) {
 			// Can't set the properties map once Spring has already
 			// set it on web-app startup.
 			throw new KolichSpringException("Global web-app properties map " +
 				"has already been set, but you're trying to set it again.");
 		} else {
-			// Insert our webapp properties into the map statically.
-			final Iterator<String> it = properties.keySet().iterator();
-			while(it.hasNext()) {
-				final String name = it.next();
-				properties_.put(name, properties.get(name));
-			}
+			// Freeze our webapp properties into an immutable copy, and
+			// publish it for everyone to read without locking.
+			base_ = new HashMap<String, Object>(properties);
+			publish();
 			// Done, to prevent these from being set later.
 			alreadySet_ = true;
 		}
 	}
 	
 	/**
-	 * Returns an unmodifiable view of the current properties map.
+	 * Returns an unmodifiable view of the current properties map.  The
+	 * returned map never changes, even if the properties are reloaded
+	 * later; code that reads several properties and needs them to agree
+	 * with each other should grab this once and read from it.
 	 * @return
 	 */
 	public Map<String, Object> getProperties() {
-		return Collections.unmodifiableMap(properties_);
+		return snapshot_.values_;
+	}
+	
+	/**
+	 * Opts in to hot reloading: properties are (re)loaded from the given
+	 * Java properties file, which is watched for changes from then on.
+	 * Values in the file override those given to
+	 * {@link #setProperties(Map)}.  Each change publishes a brand new
+	 * snapshot; readers are never blocked, and never see half of one,
+	 * but only those reading from one {@link #getProperties()} map see
+	 * the same snapshot throughout.
+	 * @param path
+	 */
+	public synchronized void setReloadableFile(String path)
+		throws IOException {
+		if(reloadableFile_ != null) {
+			throw new KolichSpringException("Reloadable properties file " +
+				"has already been set, but you're trying to set it again.");
+		}
+		reloadableFile_ = new File(path).getAbsoluteFile();
+		// Start watching before the first load, so a change in between
+		// isn't missed.
+		final Path dir = reloadableFile_.getParentFile().toPath();
+		final WatchService watcher =
+			FileSystems.getDefault().newWatchService();
+		dir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
+		watcher_ = watcher;
+		reload();
+		final Path fileName = reloadableFile_.toPath().getFileName();
+		final Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				watch(watcher, fileName);
+			}
+		}, "kolich-properties-watcher");
+		t.setDaemon(true);
+		t.start();
+	}
+	
+	/**
+	 * How long, in milliseconds, the reloadable file has to go without
+	 * changes before it is reloaded.  Defaults to 500ms.
+	 */
+	public void setReloadQuietPeriod(final long reloadQuietPeriod) {
+		reloadQuietPeriod_ = reloadQuietPeriod;
+	}
+	
+	public void addPropertiesChangeListener(
+		final PropertiesChangeListener listener) {
+		listeners_.add(listener);
+	}
+	
+	public void removePropertiesChangeListener(
+		final PropertiesChangeListener listener) {
+		listeners_.remove(listener);
+	}
+	
+	/**
+	 * Reloads the reloadable properties file right now, if there is one,
+	 * and publishes a new snapshot if anything changed.  If the file
+	 * cannot be read, the current snapshot is left as is.
+	 */
+	public synchronized void reload() {
+		if(reloadableFile_ == null) {
+			return;
+		}
+		final Properties props = new Properties();
+		try (final InputStream is = Files.newInputStream(
+			reloadableFile_.toPath())) {
+			props.load(is);
+		} catch (IOException e) {
+			logger__.warn("Failed to load properties from " +
+				reloadableFile_ + ", keeping current snapshot.", e);
+			return;
+		}
+		final Map<String, Object> loaded = new HashMap<String, Object>();
+		for(final String name : props.stringPropertyNames()) {
+			loaded.put(name, props.getProperty(name));
+		}
+		loaded_ = loaded;
+		publish();
+	}
+	
+	/**
+	 * Publishes a new snapshot built from the current base and loaded
+	 * properties, then tells listeners what changed, if anything.
+	 * Callers must hold the lock on this instance.
+	 */
+	private void publish() {
+		final Map<String, Object> values =
+			new HashMap<String, Object>(base_);
+		values.putAll(loaded_);
+		final Snapshot previous = snapshot_;
+		final MapDifference<String, Object> difference =
+			Maps.difference(previous.values_, values);
+		if(difference.areEqual()) {
+			return;
+		}
+		snapshot_ = new Snapshot(Collections.unmodifiableMap(values));
+		for(final PropertiesChangeListener listener : listeners_) {
+			try {
+				listener.propertiesChanged(difference);
+			} catch (Exception e) {
+				logger__.warn("Properties change listener failed.", e);
+			}
+		}
+	}
+	
+	private void watch(final WatchService watcher, final Path fileName) {
+		try {
+			for(;;) {
+				WatchKey key = watcher.take();
+				boolean changed = false;
+				// Files are rarely written in one go; once our file has
+				// changed, keep coalescing events until the directory has
+				// been quiet for a while, so a half written file is never
+				// published.
+				while(key != null) {
+					for(final WatchEvent<?> event : key.pollEvents()) {
+						// Overflows may have hidden an event on our file.
+						changed |= fileName.equals(event.context()) ||
+							event.kind() == OVERFLOW;
+					}
+					if(!key.reset()) {
+						logger__.warn("Lost watch on directory of " +
+							reloadableFile_ + ", no longer reloading.");
+						return;
+					}
+					key = (changed) ? watcher.poll(reloadQuietPeriod_,
+						MILLISECONDS) : null;
+				}
+				if(changed) {
+					reload();
+				}
+			}
+		} catch (ClosedWatchServiceException e) {
+			// Shut down by destroy(), all done.
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	@Override
+	public void destroy() throws Exception {
+		final WatchService watcher;
+		synchronized(this) {
+			watcher = watcher_;
+			watcher_ = null;
+		}
+		if(watcher != null) {
+			watcher.close();
+		}
 	}
 	
 }
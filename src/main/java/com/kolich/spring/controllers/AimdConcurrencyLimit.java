@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.controllers;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An adaptive concurrency limit using additive-increase/multiplicative-
+ * decrease.  Every execution that finishes within the latency threshold
+ * while the limit is nearly used up nudges the limit up by one; every
+ * execution that is too slow, or that timed out, cuts it by the backoff
+ * ratio.  The limit always stays between the configured min and max.
+ * 
+ * Lock-free; the limit and in-flight count are plain atomics.
+ */
+final class AimdConcurrencyLimit {
+	
+	private final int minLimit_;
+	private final int maxLimit_;
+	private final double backoffRatio_;
+	private final long latencyThresholdNanos_;
+	
+	private final AtomicInteger limit_;
+	private final AtomicInteger inFlight_ = new AtomicInteger(0);
+	
+	AimdConcurrencyLimit(final int initialLimit, final int minLimit,
+		final int maxLimit, final double backoffRatio,
+		final long latencyThresholdNanos) {
+		minLimit_ = minLimit;
+		maxLimit_ = maxLimit;
+		backoffRatio_ = backoffRatio;
+		latencyThresholdNanos_ = latencyThresholdNanos;
+		limit_ = new AtomicInteger(Math.max(minLimit,
+			Math.min(maxLimit, initialLimit)));
+	}
+	
+	public boolean tryAcquire() {
+		for(;;) {
+			final int inFlight = inFlight_.get();
+			if(inFlight >= limit_.get()) {
+				return false;
+			} else if(inFlight_.compareAndSet(inFlight, inFlight + 1)) {
+				return true;
+			}
+		}
+	}
+	
+	public void release(final long latencyNanos, final boolean dropped) {
+		final int inFlight = inFlight_.getAndDecrement();
+		for(;;) {
+			final int limit = limit_.get();
+			final int next;
+			if(dropped || latencyNanos > latencyThresholdNanos_) {
+				next = Math.max(minLimit_, (int)(limit * backoffRatio_));
+			} else if(inFlight * 2 >= limit) {
+				// Only grow if we're actually using the limit we've got.
+				next = Math.min(maxLimit_, limit + 1);
+			} else {
+				return;
+			}
+			if(next == limit || limit_.compareAndSet(limit, next)) {
+				return;
+			}
+		}
+	}
+	
+	public int getLimit() {
+		return limit_.get();
+	}
+	
+	public int getInFlight() {
+		return inFlight_.get();
+	}
+	
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.controllers;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.web.servlet.ModelAndView;
+
+import com.google.common.util.concurrent.SettableFuture;
+import com.kolich.spring.exceptions.KolichSpringException;
+
+/**
+ * Single-flight execution of {@link KolichControllerClosure}'s that share
+ * a name and coalescing key.  The first caller runs the closure; any
+ * concurrent callers with the same name and key simply wait for, and
+ * then share, its result (or its exception) instead of repeating the
+ * work.  A successful result may optionally be held on to for a short
+ * TTL after it completes.
+ * 
+ * Callers never share a {@link ModelAndView}, which the dispatcher
+ * mutates as it renders; every caller gets its own copy.
+ */
+final class ClosureCoalescer {
+	
+	/**
+	 * Expired results are purged from the map once every this many
+	 * completions, so results for keys that never come back again don't
+	 * pile up forever.
+	 */
+	private static final long PURGE_INTERVAL = 1024L;
+	
+	private static final ConcurrentMap<Object, Flight> flights__ =
+		new ConcurrentHashMap<Object, Flight>();
+	
+	private static final AtomicLong completions__ = new AtomicLong(0L);
+	
+	// Cannot instantiate.
+	private ClosureCoalescer() {}
+	
+	@SuppressWarnings("unchecked")
+	static final <T> T execute(final KolichControllerClosure<T> closure,
+		final Object key, final long ttl) {
+		final Object flightKey = Arrays.asList(closure.getName(), key);
+		for(;;) {
+			final Flight flight = new Flight();
+			final Flight existing;
+			if((existing = flights__.putIfAbsent(flightKey, flight)) == null) {
+				return lead(closure, flightKey, flight, ttl);
+			} else if(existing.isExpired(System.currentTimeMillis())) {
+				// Stale held result; evict it and try again.
+				flights__.remove(flightKey, existing);
+			} else {
+				return (T)copy(existing.await());
+			}
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static final <T> T lead(final KolichControllerClosure<T> closure,
+		final Object flightKey, final Flight flight, final long ttl) {
+		boolean hold = false;
+		try {
+			final T result = closure.executeNow();
+			flight.result_.set(result);
+			hold = (ttl > 0L);
+			if(hold) {
+				flight.expiresAt_ = System.currentTimeMillis() + ttl;
+			}
+			return (T)copy(result);
+		} catch (RuntimeException e) {
+			flight.result_.setException(e);
+			throw e;
+		} catch (Error e) {
+			flight.result_.setException(e);
+			throw e;
+		} finally {
+			if(!hold) {
+				flights__.remove(flightKey, flight);
+			}
+			if(completions__.incrementAndGet() % PURGE_INTERVAL == 0L) {
+				purgeExpired();
+			}
+		}
+	}
+	
+	private static final void purgeExpired() {
+		final long now = System.currentTimeMillis();
+		final Iterator<Flight> it = flights__.values().iterator();
+		while(it.hasNext()) {
+			if(it.next().isExpired(now)) {
+				it.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Returns a copy of the given result that is safe to hand to just
+	 * one caller.  Only {@link ModelAndView}'s actually need copying.
+	 */
+	private static final Object copy(final Object result) {
+		if(result instanceof ModelAndView) {
+			final ModelAndView mav = (ModelAndView)result;
+			return (mav.isReference()) ?
+				new ModelAndView(mav.getViewName(), mav.getModel()) :
+				new ModelAndView(mav.getView(), mav.getModel());
+		}
+		return result;
+	}
+	
+	private static final class Flight {
+		
+		private final SettableFuture<Object> result_ = SettableFuture.create();
+		
+		/**
+		 * When the held result of this flight expires; max value until
+		 * the result is in, or if it isn't being held at all.
+		 */
+		private volatile long expiresAt_ = Long.MAX_VALUE;
+		
+		private boolean isExpired(final long now) {
+			return now >= expiresAt_;
+		}
+		
+		private Object await() {
+			try {
+				return result_.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new KolichSpringException(e);
+			} catch (ExecutionException e) {
+				// Whatever the leader threw, already logged and wrapped.
+				final Throwable cause = e.getCause();
+				if(cause instanceof Error) {
+					throw (Error)cause;
+				}
+				throw (RuntimeException)cause;
+			}
+		}
+		
+	}
+	
+}
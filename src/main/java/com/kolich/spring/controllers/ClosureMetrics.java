@@ -0,0 +1,213 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.controllers;
+
+import static com.kolich.spring.controllers.LatencyHistogram.BUCKETS;
+import static com.kolich.spring.controllers.LatencyHistogram.bucketFor;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram, outcome counters and in-flight gauge of one named
+ * kind of {@link KolichControllerClosure}.  Recording never takes a lock:
+ * every thread records into one of a handful of stripes, picked by its
+ * thread ID, which spreads contention the same way a LongAdder does.
+ * Stripes are only summed up when a snapshot is taken.
+ */
+public final class ClosureMetrics implements ClosureMetricsMXBean {
+	
+	private static final int STRIPES;
+	static {
+		int stripes = 1;
+		final int cpus = Runtime.getRuntime().availableProcessors();
+		while(stripes < cpus && stripes < 64) {
+			stripes <<= 1;
+		}
+		STRIPES = stripes;
+	}
+	
+	static enum Outcome {
+		SUCCESS, INVALID, FAILURE, REJECTED;
+	}
+	
+	// Slots in the counters of each stripe, after one per outcome.
+	private static final int IN_FLIGHT = Outcome.values().length;
+	private static final int TOTAL_NANOS = IN_FLIGHT + 1;
+	private static final int MAX_NANOS = IN_FLIGHT + 2;
+	private static final int COUNTERS = IN_FLIGHT + 3;
+	
+	private static final class Stripe {
+		private final AtomicLongArray counters_ =
+			new AtomicLongArray(COUNTERS);
+		private final AtomicLongArray buckets_ =
+			new AtomicLongArray(BUCKETS);
+	}
+	
+	private final String name_;
+	private final Stripe[] stripes_;
+	
+	ClosureMetrics(final String name) {
+		name_ = name;
+		stripes_ = new Stripe[STRIPES];
+		for(int i = 0; i < STRIPES; i++) {
+			stripes_[i] = new Stripe();
+		}
+	}
+	
+	private Stripe stripe() {
+		return stripes_[(int)(Thread.currentThread().getId() &
+			(STRIPES - 1))];
+	}
+	
+	/**
+	 * Marks the start of an execution; returns its start time, which must
+	 * be handed back to {@link #end(long, Outcome)} on the same thread.
+	 */
+	long begin() {
+		stripe().counters_.incrementAndGet(IN_FLIGHT);
+		return System.nanoTime();
+	}
+	
+	void end(final long started, final Outcome outcome) {
+		final long nanos = System.nanoTime() - started;
+		final Stripe stripe = stripe();
+		final AtomicLongArray counters = stripe.counters_;
+		counters.decrementAndGet(IN_FLIGHT);
+		counters.incrementAndGet(outcome.ordinal());
+		counters.addAndGet(TOTAL_NANOS, nanos);
+		long max;
+		while(nanos > (max = counters.get(MAX_NANOS)) &&
+			!counters.compareAndSet(MAX_NANOS, max, nanos)) {
+			// Lost a race with another thread on this stripe, try again.
+		}
+		stripe.buckets_.incrementAndGet(bucketFor(
+			NANOSECONDS.toMicros(nanos)));
+	}
+	
+	public ClosureMetricsSnapshot snapshot() {
+		final long[] counters = new long[COUNTERS];
+		final long[] buckets = new long[BUCKETS];
+		long maxNanos = 0L;
+		for(final Stripe stripe : stripes_) {
+			for(int i = 0; i < COUNTERS; i++) {
+				if(i == MAX_NANOS) {
+					maxNanos = Math.max(maxNanos, stripe.counters_.get(i));
+				} else {
+					counters[i] += stripe.counters_.get(i);
+				}
+			}
+			for(int i = 0; i < BUCKETS; i++) {
+				buckets[i] += stripe.buckets_.get(i);
+			}
+		}
+		return new ClosureMetricsSnapshot(name_, System.currentTimeMillis(),
+			counters[Outcome.SUCCESS.ordinal()],
+			counters[Outcome.INVALID.ordinal()],
+			counters[Outcome.FAILURE.ordinal()],
+			counters[Outcome.REJECTED.ordinal()],
+			counters[IN_FLIGHT], counters[TOTAL_NANOS], maxNanos, buckets);
+	}
+	
+	/**
+	 * Sums up just the given counter across all stripes, so the simple
+	 * JMX attributes don't have to copy the whole histogram.
+	 */
+	private long sum(final int counter) {
+		long sum = 0L;
+		for(final Stripe stripe : stripes_) {
+			sum += stripe.counters_.get(counter);
+		}
+		return sum;
+	}
+	
+	@Override
+	public String getName() {
+		return name_;
+	}
+	
+	@Override
+	public long getCount() {
+		return getSuccesses() + getInvalid() + getFailures() + getRejected();
+	}
+	
+	@Override
+	public long getSuccesses() {
+		return sum(Outcome.SUCCESS.ordinal());
+	}
+	
+	@Override
+	public long getInvalid() {
+		return sum(Outcome.INVALID.ordinal());
+	}
+	
+	@Override
+	public long getFailures() {
+		return sum(Outcome.FAILURE.ordinal());
+	}
+	
+	@Override
+	public long getRejected() {
+		return sum(Outcome.REJECTED.ordinal());
+	}
+	
+	@Override
+	public long getInFlight() {
+		return sum(IN_FLIGHT);
+	}
+	
+	@Override
+	public double getMeanMicros() {
+		return snapshot().getMeanMicros();
+	}
+	
+	@Override
+	public long getMaxMicros() {
+		return snapshot().getMaxMicros();
+	}
+	
+	@Override
+	public long getP50Micros() {
+		return snapshot().getPercentile(50.0d);
+	}
+	
+	@Override
+	public long getP90Micros() {
+		return snapshot().getPercentile(90.0d);
+	}
+	
+	@Override
+	public long getP99Micros() {
+		return snapshot().getPercentile(99.0d);
+	}
+	
+	@Override
+	public long getP999Micros() {
+		return snapshot().getPercentile(99.9d);
+	}
+	
+}
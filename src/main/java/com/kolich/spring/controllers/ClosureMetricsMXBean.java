@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.controllers;
+
+/**
+ * JMX view of the {@link ClosureMetrics} of one named kind of
+ * {@link KolichControllerClosure}.  Latencies are in microseconds,
+ * and are cumulative since the closure first ran.
+ */
+public interface ClosureMetricsMXBean {
+	
+	public String getName();
+	
+	public long getCount();
+	public long getSuccesses();
+	public long getInvalid();
+	public long getFailures();
+	public long getRejected();
+	public long getInFlight();
+	
+	public double getMeanMicros();
+	public long getMaxMicros();
+	public long getP50Micros();
+	public long getP90Micros();
+	public long getP99Micros();
+	public long getP999Micros();
+	
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.controllers;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.kolich.spring.controllers.LatencyHistogram.BUCKETS;
+import static com.kolich.spring.controllers.LatencyHistogram.highestValueIn;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Immutable, point in time copy of the {@link ClosureMetrics} of one
+ * named kind of {@link KolichControllerClosure}.  Latencies are in
+ * microseconds.
+ */
+public final class ClosureMetricsSnapshot {
+	
+	private final String name_;
+	private final long timestamp_;
+	
+	private final long successes_;
+	private final long invalid_;
+	private final long failures_;
+	private final long rejected_;
+	private final long inFlight_;
+	
+	private final long totalNanos_;
+	private final long maxNanos_;
+	private final long[] buckets_;
+	
+	ClosureMetricsSnapshot(final String name, final long timestamp,
+		final long successes, final long invalid, final long failures,
+		final long rejected, final long inFlight, final long totalNanos,
+		final long maxNanos, final long[] buckets) {
+		name_ = name;
+		timestamp_ = timestamp;
+		successes_ = successes;
+		invalid_ = invalid;
+		failures_ = failures;
+		rejected_ = rejected;
+		inFlight_ = inFlight;
+		totalNanos_ = totalNanos;
+		maxNanos_ = maxNanos;
+		buckets_ = buckets;
+	}
+	
+	public String getName() {
+		return name_;
+	}
+	
+	/**
+	 * When this snapshot was taken, in milliseconds since the epoch.
+	 */
+	public long getTimestamp() {
+		return timestamp_;
+	}
+	
+	public long getCount() {
+		return successes_ + invalid_ + failures_ + rejected_;
+	}
+	
+	public long getSuccesses() {
+		return successes_;
+	}
+	
+	/**
+	 * Executions that threw an {@link IllegalArgumentException}.
+	 */
+	public long getInvalid() {
+		return invalid_;
+	}
+	
+	/**
+	 * Executions that threw anything else.
+	 */
+	public long getFailures() {
+		return failures_;
+	}
+	
+	/**
+	 * Executions turned away, or timed out, by a
+	 * {@link KolichClosurePolicy}.
+	 */
+	public long getRejected() {
+		return rejected_;
+	}
+	
+	public long getInFlight() {
+		return inFlight_;
+	}
+	
+	public double getMeanMicros() {
+		final long count = getCount();
+		return (count == 0L) ? 0.0d :
+			(double)NANOSECONDS.toMicros(totalNanos_) / count;
+	}
+	
+	public long getMaxMicros() {
+		return NANOSECONDS.toMicros(maxNanos_);
+	}
+	
+	/**
+	 * Returns the latency, in microseconds, at or below which the given
+	 * percentage (0 to 100) of executions completed.
+	 */
+	public long getPercentile(final double percentile) {
+		checkArgument(percentile >= 0.0d && percentile <= 100.0d,
+			"Percentile must be between 0 and 100.");
+		final long count = getCount();
+		if(count == 0L) {
+			return 0L;
+		}
+		final long target = Math.max(1L,
+			(long)Math.ceil((percentile / 100.0d) * count));
+		final long max = getMaxMicros();
+		long seen = 0L;
+		for(int i = 0; i < BUCKETS; i++) {
+			if((seen += buckets_[i]) >= target) {
+				return Math.min(highestValueIn(i), max);
+			}
+		}
+		return max;
+	}
+	
+	/**
+	 * Returns the difference between this snapshot and an earlier one of
+	 * the same closure; the executions that completed in between.  The
+	 * in-flight gauge is taken as is, and the max is approximated by the
+	 * highest non-empty bucket.
+	 */
+	public ClosureMetricsSnapshot since(final ClosureMetricsSnapshot earlier) {
+		checkArgument(name_.equals(earlier.name_),
+			"Cannot diff snapshots of different closures.");
+		final long[] buckets = new long[BUCKETS];
+		long maxMicros = 0L;
+		for(int i = 0; i < BUCKETS; i++) {
+			if((buckets[i] = buckets_[i] - earlier.buckets_[i]) > 0L) {
+				maxMicros = highestValueIn(i);
+			}
+		}
+		return new ClosureMetricsSnapshot(name_, timestamp_,
+			successes_ - earlier.successes_,
+			invalid_ - earlier.invalid_,
+			failures_ - earlier.failures_,
+			rejected_ - earlier.rejected_,
+			inFlight_,
+			totalNanos_ - earlier.totalNanos_,
+			Math.min(maxNanos_, maxMicros * 1000L),
+			buckets);
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s: count=%d, successes=%d, invalid=%d, " +
+			"failures=%d, rejected=%d, inFlight=%d, mean=%.1fus, " +
+			"p50=%dus, p99=%dus, p999=%dus, max=%dus", name_, getCount(),
+			successes_, invalid_, failures_, rejected_, inFlight_,
+			getMeanMicros(), getPercentile(50.0d), getPercentile(99.0d),
+			getPercentile(99.9d), getMaxMicros());
+	}
+	
+}
@@ -0,0 +1,256 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.controllers;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Global registry of {@link ClosureMetrics}, keyed by closure name.
+ * Recording is off until one of these is declared as a bean.  From then
+ * on, every {@link KolichControllerClosure} constructed with an explicit
+ * name records into it on each {@link KolichControllerClosure#execute()};
+ * closures named only by their free-form comment never do, so that per
+ * request comments cannot grow the registry without bound.  The bean can
+ * also publish the metrics of each closure as an MXBean, and/or have a
+ * list of {@link ClosureMetricsExporter}'s called periodically.
+ */
+public final class KolichClosureMetrics
+	implements InitializingBean, DisposableBean {
+	
+	private static final Logger logger__ =
+		LoggerFactory.getLogger(KolichClosureMetrics.class);
+	
+	private static final String DEFAULT_JMX_DOMAIN = "com.kolich.spring";
+	private static final long DEFAULT_EXPORT_INTERVAL_MS = 60000L;
+	
+	private static final ConcurrentMap<String, ClosureMetrics> metrics__ =
+		new ConcurrentHashMap<String, ClosureMetrics>();
+	
+	private static volatile boolean enabled__ = false;
+	
+	/**
+	 * Server and domain new closures are registered with as they show up;
+	 * null until a bean with JMX enabled is initialized.
+	 */
+	private static volatile MBeanServer mbeanServer__ = null;
+	private static volatile String jmxDomain__ = DEFAULT_JMX_DOMAIN;
+	
+	private boolean enabled_ = true;
+	private boolean jmxEnabled_ = false;
+	private String jmxDomain_ = DEFAULT_JMX_DOMAIN;
+	private List<ClosureMetricsExporter> exporters_ =
+		Collections.emptyList();
+	private long exportInterval_ = DEFAULT_EXPORT_INTERVAL_MS;
+	
+	private ScheduledExecutorService scheduler_ = null;
+	
+	/**
+	 * Returns the metrics of the closure with the given name, creating
+	 * them if need be, or null if metrics are disabled or the closure
+	 * has no name.
+	 */
+	static final ClosureMetrics getMetrics(final String name) {
+		if(!enabled__ || name == null) {
+			return null;
+		}
+		ClosureMetrics metrics;
+		if((metrics = metrics__.get(name)) == null) {
+			final ClosureMetrics created = new ClosureMetrics(name);
+			if((metrics = metrics__.putIfAbsent(name, created)) == null) {
+				metrics = created;
+				final MBeanServer server;
+				if((server = mbeanServer__) != null) {
+					register(server, jmxDomain__, created);
+				}
+			}
+		}
+		return metrics;
+	}
+	
+	/**
+	 * Returns a snapshot of the metrics of every closure seen so far.
+	 */
+	public static final List<ClosureMetricsSnapshot> snapshots() {
+		final List<ClosureMetricsSnapshot> snapshots =
+			new ArrayList<ClosureMetricsSnapshot>(metrics__.size());
+		for(final ClosureMetrics metrics : metrics__.values()) {
+			snapshots.add(metrics.snapshot());
+		}
+		return snapshots;
+	}
+	
+	/**
+	 * Returns a snapshot of the metrics of the closure with the given
+	 * name, or null if it never ran.
+	 */
+	public static final ClosureMetricsSnapshot snapshot(final String name) {
+		final ClosureMetrics metrics;
+		return (name != null && (metrics = metrics__.get(name)) != null) ?
+			metrics.snapshot() : null;
+	}
+	
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		enabled__ = enabled_;
+		if(jmxEnabled_) {
+			final MBeanServer server =
+				ManagementFactory.getPlatformMBeanServer();
+			jmxDomain__ = jmxDomain_;
+			mbeanServer__ = server;
+			for(final ClosureMetrics metrics : metrics__.values()) {
+				register(server, jmxDomain_, metrics);
+			}
+		}
+		if(!exporters_.isEmpty() && exportInterval_ > 0L) {
+			scheduler_ = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(final Runnable r) {
+						final Thread t = new Thread(r,
+							"kolich-closure-metrics");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+			scheduler_.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					export();
+				}
+			}, exportInterval_, exportInterval_, MILLISECONDS);
+		}
+	}
+	
+	@Override
+	public void destroy() throws Exception {
+		enabled__ = false;
+		if(scheduler_ != null) {
+			scheduler_.shutdownNow();
+		}
+		if(jmxEnabled_) {
+			final MBeanServer server = mbeanServer__;
+			mbeanServer__ = null;
+			if(server != null) {
+				for(final ClosureMetrics metrics : metrics__.values()) {
+					unregister(server, jmxDomain_, metrics);
+				}
+			}
+		}
+	}
+	
+	private void export() {
+		final List<ClosureMetricsSnapshot> snapshots = snapshots();
+		for(final ClosureMetricsExporter exporter : exporters_) {
+			try {
+				exporter.export(snapshots);
+			} catch (Exception e) {
+				// One broken exporter should not starve the others.
+				logger__.warn("Closure metrics exporter " +
+					exporter.getClass().getName() + " failed.", e);
+			}
+		}
+	}
+	
+	private static final ObjectName getObjectName(final String domain,
+		final ClosureMetrics metrics) throws JMException {
+		return new ObjectName(domain + ":type=ClosureMetrics,name=" +
+			ObjectName.quote(metrics.getName()));
+	}
+	
+	private static final void register(final MBeanServer server,
+		final String domain, final ClosureMetrics metrics) {
+		try {
+			final ObjectName name = getObjectName(domain, metrics);
+			if(!server.isRegistered(name)) {
+				server.registerMBean(metrics, name);
+			}
+		} catch (JMException e) {
+			logger__.warn("Failed to register metrics of closure '" +
+				metrics.getName() + "' with JMX.", e);
+		}
+	}
+	
+	private static final void unregister(final MBeanServer server,
+		final String domain, final ClosureMetrics metrics) {
+		try {
+			final ObjectName name = getObjectName(domain, metrics);
+			if(server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (JMException e) {
+			logger__.debug("Failed to unregister metrics of closure '" +
+				metrics.getName() + "' from JMX.", e);
+		}
+	}
+	
+	/**
+	 * Turns recording on or off for every named closure, once this bean
+	 * is initialized.  On by default.
+	 */
+	public void setEnabled(boolean enabled) {
+		enabled_ = enabled;
+	}
+	
+	public void setJmxEnabled(boolean jmxEnabled) {
+		jmxEnabled_ = jmxEnabled;
+	}
+	
+	public void setJmxDomain(String jmxDomain) {
+		jmxDomain_ = jmxDomain;
+	}
+	
+	public void setExporters(List<ClosureMetricsExporter> exporters) {
+		exporters_ = exporters;
+	}
+	
+	/**
+	 * How often the exporters are called, in milliseconds.
+	 */
+	public void setExportInterval(long exportInterval) {
+		exportInterval_ = exportInterval;
+	}
+	
+}
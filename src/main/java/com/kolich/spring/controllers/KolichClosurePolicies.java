@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.controllers;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Global registry of {@link KolichClosurePolicy}'s, keyed by closure
+ * name.  Closures are usually created with <code>new</code> inside
+ * of controller methods, not by Spring, so this is how they find their
+ * policy.  Declare one of these as a bean and hand it a map of policies
+ * via {@link #setPolicies(Map)}, or register them programmatically.
+ */
+public final class KolichClosurePolicies {
+	
+	private static final ConcurrentMap<String, KolichClosurePolicy> policies__ =
+		new ConcurrentHashMap<String, KolichClosurePolicy>();
+	
+	/**
+	 * Returns the policy registered for the closure with the given name,
+	 * or null if it has none.
+	 */
+	public static final KolichClosurePolicy getPolicy(final String name) {
+		return (name != null) ? policies__.get(name) : null;
+	}
+	
+	public static final void register(final String name,
+		final KolichClosurePolicy policy) {
+		policies__.put(checkNotNull(name, "Closure name cannot be null."),
+			checkNotNull(policy, "Closure policy cannot be null."));
+	}
+	
+	public static final void unregister(final String name) {
+		policies__.remove(name);
+	}
+	
+	public void setPolicies(Map<String, KolichClosurePolicy> policies) {
+		for(final Map.Entry<String, KolichClosurePolicy> e :
+			policies.entrySet()) {
+			register(e.getKey(), e.getValue());
+		}
+	}
+	
+}
@@ -0,0 +1,319 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.controllers;
+
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.InitializingBean;
+
+import com.kolich.spring.exceptions.ClosureRejectedException;
+
+/**
+ * Execution policy of one named kind of {@link KolichControllerClosure}:
+ * an optional deadline on {@link KolichControllerClosure#doit()}, an
+ * optional semaphore bulkhead capping concurrent executions, and an
+ * optional adaptive (AIMD) concurrency limit driven by observed latency.
+ * Anything that is rejected, or misses its deadline, fails fast with a
+ * stackless {@link ClosureRejectedException} (a 503).
+ * 
+ * Policies are bound to closures by name through
+ * {@link KolichClosurePolicies}.  Note that a closure with a deadline
+ * runs its {@link KolichControllerClosure#doit()} on the policy's
+ * executor, not on the request thread, so it cannot rely on any thread
+ * bound request state.  An execution that misses its deadline is
+ * interrupted, but keeps its bulkhead and concurrency limit permits
+ * until it actually finishes, since most blocking I/O ignores interrupts
+ * and the work is still going on.
+ */
+public final class KolichClosurePolicy implements InitializingBean {
+	
+	private static final int DEFAULT_INITIAL_LIMIT = 20;
+	private static final int DEFAULT_MIN_LIMIT = 1;
+	private static final int DEFAULT_MAX_LIMIT = 200;
+	private static final double DEFAULT_BACKOFF_RATIO = 0.9d;
+	private static final long DEFAULT_LATENCY_THRESHOLD_MS = 1000L;
+	
+	/**
+	 * Shared by every policy with a deadline that was not given an
+	 * executor of its own.  Bounded, so that executions stuck on a slow
+	 * dependency cannot pile up threads without limit; once every thread
+	 * is busy, further executions are rejected.
+	 */
+	private static final int DEFAULT_EXECUTOR_THREADS = 200;
+	private static final long DEFAULT_EXECUTOR_KEEP_ALIVE_MS = 60000L;
+	private static ExecutorService defaultExecutor__ = null;
+	
+	private long timeout_ = 0L;
+	private int maxConcurrent_ = 0;
+	
+	private boolean adaptiveLimit_ = false;
+	private int initialLimit_ = DEFAULT_INITIAL_LIMIT;
+	private int minLimit_ = DEFAULT_MIN_LIMIT;
+	private int maxLimit_ = DEFAULT_MAX_LIMIT;
+	private double backoffRatio_ = DEFAULT_BACKOFF_RATIO;
+	private long latencyThreshold_ = DEFAULT_LATENCY_THRESHOLD_MS;
+	
+	private ExecutorService executor_ = null;
+	
+	private Semaphore bulkhead_ = null;
+	private AimdConcurrencyLimit limit_ = null;
+	private volatile boolean initialized_ = false;
+	
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		if(maxConcurrent_ > 0) {
+			bulkhead_ = new Semaphore(maxConcurrent_);
+		}
+		if(adaptiveLimit_) {
+			limit_ = new AimdConcurrencyLimit(initialLimit_, minLimit_,
+				maxLimit_, backoffRatio_,
+				MILLISECONDS.toNanos(latencyThreshold_));
+		}
+		if(timeout_ > 0L && executor_ == null) {
+			executor_ = getDefaultExecutor();
+		}
+		initialized_ = true;
+	}
+	
+	/**
+	 * Admits one execution of the named closure, or throws if the
+	 * bulkhead or concurrency limit is saturated.  Returns the time the
+	 * execution started, which must be handed back to
+	 * {@link #release(long, boolean)} once it's done.
+	 */
+	private long acquire(final String name) {
+		checkState(initialized_, "Closure policy was never initialized.");
+		if(bulkhead_ != null && !bulkhead_.tryAcquire()) {
+			throw new ClosureRejectedException("Bulkhead of closure '" +
+				name + "' is saturated.");
+		}
+		if(limit_ != null && !limit_.tryAcquire()) {
+			if(bulkhead_ != null) {
+				bulkhead_.release();
+			}
+			throw new ClosureRejectedException("Concurrency limit of " +
+				"closure '" + name + "' is saturated.");
+		}
+		return System.nanoTime();
+	}
+	
+	private void release(final long started, final boolean timedOut) {
+		if(limit_ != null) {
+			limit_.release(System.nanoTime() - started, timedOut);
+		}
+		if(bulkhead_ != null) {
+			bulkhead_.release();
+		}
+	}
+	
+	/**
+	 * Runs {@link KolichControllerClosure#doit()} of the given closure
+	 * under this policy: throws right away, before doing any work, if
+	 * saturated, and within this policy's deadline if it has one.
+	 */
+	<T> T execute(final KolichControllerClosure<T> closure) throws Exception {
+		final long started = acquire(closure.getName());
+		if(timeout_ <= 0L) {
+			try {
+				return closure.doit();
+			} finally {
+				release(started, false);
+			}
+		}
+		final Execution<T> execution = new Execution<T>(closure, started);
+		final Future<T> future;
+		try {
+			future = executor_.submit(execution);
+		} catch (RejectedExecutionException e) {
+			release(started, false);
+			throw new ClosureRejectedException("Executor of closure '" +
+				closure.getName() + "' is saturated.");
+		}
+		try {
+			return future.get(timeout_, MILLISECONDS);
+		} catch (TimeoutException e) {
+			execution.abandon(future);
+			throw new ClosureRejectedException("Closure '" +
+				closure.getName() + "' missed its deadline of " + timeout_ +
+				"ms.");
+		} catch (InterruptedException e) {
+			execution.abandon(future);
+			Thread.currentThread().interrupt();
+			throw e;
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if(cause instanceof Exception) {
+				throw (Exception)cause;
+			} else if(cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw e;
+		}
+	}
+	
+	/**
+	 * One execution handed off to the executor.  Whoever gets to it last,
+	 * the execution itself when it finishes, or the caller abandoning it
+	 * before it ever started, releases its permits; exactly once.
+	 */
+	private final class Execution<T> implements Callable<T> {
+		
+		private static final int PENDING = 0;
+		private static final int RUNNING = 1;
+		private static final int ABANDONED = 2;
+		
+		private final KolichControllerClosure<T> closure_;
+		private final long started_;
+		private final AtomicInteger state_ = new AtomicInteger(PENDING);
+		private volatile boolean timedOut_ = false;
+		
+		private Execution(final KolichControllerClosure<T> closure,
+			final long started) {
+			closure_ = closure;
+			started_ = started;
+		}
+		
+		@Override
+		public T call() throws Exception {
+			if(!state_.compareAndSet(PENDING, RUNNING)) {
+				// Abandoned before it got a thread; permits are gone.
+				return null;
+			}
+			try {
+				return closure_.doit();
+			} finally {
+				release(started_, timedOut_);
+			}
+		}
+		
+		private void abandon(final Future<T> future) {
+			timedOut_ = true;
+			if(state_.compareAndSet(PENDING, ABANDONED)) {
+				// Never started, and now never will.
+				release(started_, true);
+			}
+			future.cancel(true);
+		}
+		
+	}
+	
+	/**
+	 * The current adaptive concurrency limit, or -1 if this policy does
+	 * not have one.
+	 */
+	public int getCurrentLimit() {
+		return (limit_ != null) ? limit_.getLimit() : -1;
+	}
+	
+	/**
+	 * Deadline of each execution, in milliseconds.  Zero means none.
+	 */
+	public void setTimeout(long timeout) {
+		timeout_ = timeout;
+	}
+	
+	/**
+	 * Size of the semaphore bulkhead.  Zero means no bulkhead.
+	 */
+	public void setMaxConcurrent(int maxConcurrent) {
+		maxConcurrent_ = maxConcurrent;
+	}
+	
+	public void setAdaptiveLimit(boolean adaptiveLimit) {
+		adaptiveLimit_ = adaptiveLimit;
+	}
+	
+	public void setInitialLimit(int initialLimit) {
+		initialLimit_ = initialLimit;
+	}
+	
+	public void setMinLimit(int minLimit) {
+		minLimit_ = minLimit;
+	}
+	
+	public void setMaxLimit(int maxLimit) {
+		maxLimit_ = maxLimit;
+	}
+	
+	/**
+	 * Factor the adaptive limit is multiplied by on every slow or timed
+	 * out execution.
+	 */
+	public void setBackoffRatio(double backoffRatio) {
+		backoffRatio_ = backoffRatio;
+	}
+	
+	/**
+	 * Executions slower than this, in milliseconds, count as a sign
+	 * of overload to the adaptive limit.
+	 */
+	public void setLatencyThreshold(long latencyThreshold) {
+		latencyThreshold_ = latencyThreshold;
+	}
+	
+	/**
+	 * Executor to run {@link KolichControllerClosure#doit()} on when
+	 * this policy has a deadline.  Should be bounded; an execution it
+	 * rejects is rejected like a saturated bulkhead.
+	 */
+	public void setExecutor(ExecutorService executor) {
+		executor_ = executor;
+	}
+	
+	private static final synchronized ExecutorService getDefaultExecutor() {
+		if(defaultExecutor__ == null) {
+			defaultExecutor__ = new ThreadPoolExecutor(0,
+				DEFAULT_EXECUTOR_THREADS, DEFAULT_EXECUTOR_KEEP_ALIVE_MS,
+				MILLISECONDS, new SynchronousQueue<Runnable>(),
+				new ThreadFactory() {
+					private final AtomicInteger count_ = new AtomicInteger(0);
+					@Override
+					public Thread newThread(final Runnable r) {
+						final Thread t = new Thread(r, "kolich-closure-" +
+							count_.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		}
+		return defaultExecutor__;
+	}
+	
+}
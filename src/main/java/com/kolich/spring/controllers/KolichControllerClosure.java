@@ -26,28 +26,63 @@
 
 package com.kolich.spring.controllers;
 
+import static com.kolich.spring.controllers.KolichResponseHeaders.JSON_HEADERS;
+import static com.kolich.spring.controllers.KolichResponseHeaders.merge;
 import static com.kolich.spring.views.AbstractKolichView.VIEW_PAYLOAD;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
 import org.slf4j.Logger;
+import org.springframework.core.io.Resource;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.WebAsyncTask;
 import org.springframework.web.servlet.ModelAndView;
 
 import com.kolich.common.entities.KolichCommonEntity;
+import com.kolich.spring.controllers.ClosureMetrics.Outcome;
+import com.kolich.spring.exceptions.ClosureRejectedException;
 import com.kolich.spring.exceptions.KolichSpringException;
 import com.kolich.spring.views.KolichViewSerializable;
 
 public abstract class KolichControllerClosure<T> {
 			
+	protected final String name_;
 	protected final String comment_;
 	protected final Logger logger_;
 	
+	/**
+	 * True if this closure was given an explicit name, rather than
+	 * falling back to its comment.  Only those record metrics.
+	 */
+	private final boolean named_;
+	
+	/**
+	 * @param name the name of this kind of closure, used to look up its
+	 * {@link KolichClosurePolicy} if any, and to record its
+	 * {@link ClosureMetrics} under
+	 */
+	public KolichControllerClosure(final String name, final String comment,
+		final Logger logger) {
+		this(name, comment, logger, true);
+	}
+	
 	public KolichControllerClosure(final String comment, final Logger logger) {
+		this(comment, comment, logger, false);
+	}
+	
+	private KolichControllerClosure(final String name, final String comment,
+		final Logger logger, final boolean named) {
+		name_ = name;
 		comment_ = comment;
 		logger_ = logger;
+		named_ = named;
 	}
 	
 	public abstract T doit() throws Exception;
@@ -56,19 +91,153 @@ public abstract class KolichControllerClosure<T> {
 	 * Default execution handler with very minimal exception handling.
 	 * Extending classes should ideally override this method and call
 	 * super.execute() as needed from their own execute() method.
+	 * If a {@link KolichClosurePolicy} is registered under the name of
+	 * this closure, it is enforced here.  If this closure has a
+	 * coalescing key, concurrent executions with the same name and key
+	 * are collapsed into one.  If this closure was given an explicit
+	 * name, latency and outcome of every execution is recorded in the
+	 * {@link ClosureMetrics} of that name.
 	 */
 	public T execute() {
+		final Object key;
+		if((key = getCoalescingKey()) != null) {
+			return ClosureCoalescer.execute(this, key, getCoalescingTtl());
+		}
+		return executeNow();
+	}
+	
+	final T executeNow() {
+		final ClosureMetrics metrics;
+		if(!named_ ||
+			(metrics = KolichClosureMetrics.getMetrics(name_)) == null) {
+			return executeWithPolicy();
+		}
+		final long started = metrics.begin();
+		Outcome outcome = Outcome.FAILURE;
 		try {
-			return doit();
+			final T result = executeWithPolicy();
+			outcome = Outcome.SUCCESS;
+			return result;
+		} catch (ClosureRejectedException e) {
+			outcome = Outcome.REJECTED;
+			throw e;
+		} catch (IllegalArgumentException e) {
+			outcome = Outcome.INVALID;
+			throw e;
+		} finally {
+			metrics.end(started, outcome);
+		}
+	}
+	
+	private T executeWithPolicy() {
+		// The policy, if any, throws right away, before doing any work,
+		// if saturated.
+		final KolichClosurePolicy policy =
+			KolichClosurePolicies.getPolicy(name_);
+		try {
+			return (policy != null) ? policy.execute(this) : doit();
+		} catch (ClosureRejectedException e) {
+			// Not wrapped, so it still maps to a 503.
+			logger_.debug(comment_, e);
+			throw e;
 		} catch (IllegalArgumentException e) {
 			logger_.debug(comment_, e);
 			throw e;
 		} catch (Exception e) {
+			if(isExpectedFailure(e)) {
+				// Part of normal control flow; not worth a log entry, or
+				// a stack trace of its own.
+				throw KolichSpringException.stackless(e);
+			}
 			logger_.debug(comment_, e);
 			throw new KolichSpringException(e);
 		}
 	}
 	
+	/**
+	 * Closures whose {@link #doit()} routinely fails in some expected way,
+	 * a miss on a lookup for example, should return true for such
+	 * exceptions.  They are then wrapped in a stackless
+	 * {@link KolichSpringException}, and not logged.
+	 * @return default false
+	 */
+	protected boolean isExpectedFailure(final Exception e) {
+		return false;
+	}
+	
+	/**
+	 * Returns a {@link Callable} that calls {@link #execute()}.  When
+	 * returned from a controller method, Spring MVC releases the container
+	 * thread and runs it on its own configured async task executor.
+	 * Exceptions are handled exactly like they are by {@link #execute()}.
+	 */
+	public final Callable<T> executeAsync() {
+		return new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				return execute();
+			}
+		};
+	}
+	
+	/**
+	 * Like {@link #executeAsync()}, but runs on the given executor.  A
+	 * {@link org.springframework.core.task.SimpleAsyncTaskExecutor} gives
+	 * a thread-per-task model, which suits closures that mostly block on
+	 * downstream I/O.
+	 */
+	public final WebAsyncTask<T> executeAsync(
+		final AsyncTaskExecutor executor) {
+		return new WebAsyncTask<T>(null, executor, executeAsync());
+	}
+	
+	/**
+	 * Submits {@link #execute()} to the given executor and returns a
+	 * {@link DeferredResult} which is completed with its result, or with
+	 * the exception it threw, once it's done.  When returned from a
+	 * controller method, the container thread is released right away.
+	 */
+	public final DeferredResult<T> executeDeferred(final Executor executor) {
+		final DeferredResult<T> result = new DeferredResult<T>();
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					result.setResult(execute());
+				} catch (Throwable t) {
+					// Already logged, and wrapped if need be, by execute().
+					result.setErrorResult(t);
+				}
+			}
+		});
+		return result;
+	}
+	
+	public String getName() {
+		return name_;
+	}
+	
+	/**
+	 * Closures that would all do the exact same work should return the
+	 * same (equals() and hashCode() wise) key here; concurrent executions
+	 * of closures with the same name and key then wait for, and share,
+	 * the result of the first one instead of each calling
+	 * {@link #doit()}.  Null, the default, disables coalescing.
+	 */
+	protected Object getCoalescingKey() {
+		return null;
+	}
+	
+	/**
+	 * How long, in milliseconds, a coalesced result is held on to after
+	 * it completes so that later callers with the same key can reuse it.
+	 * Exceptions are never held.  Zero, the default, means results are
+	 * only shared with callers that arrived while it was in flight.
+	 */
+	protected long getCoalescingTtl() {
+		return 0L;
+	}
+	
 	public static final ModelAndView getModelAndView(final String viewName) {
 		return new ModelAndView(viewName);
 	}
@@ -102,12 +271,7 @@ public abstract class KolichControllerClosure<T> {
 	public static final ResponseEntity<byte[]> getResponseEntity(
 		final KolichCommonEntity entity, final HttpHeaders headers,
 		final MediaType contentType, final HttpStatus status) {
-		final HttpHeaders merged = new HttpHeaders();
-		if(headers != null) {
-			merged.putAll(headers);
-		}
-		merged.setContentType(contentType);
-		return getResponseEntity(entity, merged, status);
+		return getResponseEntity(entity, merge(headers, contentType), status);
 	}
 	
 	public static final ResponseEntity<byte[]> getResponseEntity(
@@ -124,7 +288,47 @@ public abstract class KolichControllerClosure<T> {
 	
 	public static final ResponseEntity<byte[]> getJsonResponseEntity(
 		final KolichCommonEntity entity, final HttpStatus status) {
-		return getJsonResponseEntity(entity, null, status);
+		return getResponseEntity(entity, JSON_HEADERS, status);
+	}
+	
+	/**
+	 * Returns a {@link ResponseEntity} whose body is streamed from the
+	 * given {@link Resource}, a file on disk for example, instead of
+	 * being loaded into a byte[] first.
+	 */
+	public static final ResponseEntity<Resource> getResponseEntity(
+		final Resource body, final HttpHeaders headers,
+		final MediaType contentType, final HttpStatus status) {
+		return new ResponseEntity<Resource>(body,
+			merge(headers, contentType), status);
+	}
+	
+	public static final ResponseEntity<Resource> getResponseEntity(
+		final Resource body, final MediaType contentType,
+		final HttpStatus status) {
+		return getResponseEntity(body, null, contentType, status);
+	}
+	
+	/**
+	 * Returns a {@link ResponseEntity} that writes the given serializable
+	 * straight to the response body; through
+	 * {@link KolichViewSerializable#writeEntity(java.io.OutputStream)} if
+	 * it is streaming.  Requires a
+	 * {@link com.kolich.spring.views.KolichViewSerializableHttpMessageConverter}
+	 * to be registered.
+	 */
+	public static final ResponseEntity<KolichViewSerializable>
+		getStreamingResponseEntity(final KolichViewSerializable body,
+			final HttpHeaders headers, final MediaType contentType,
+			final HttpStatus status) {
+		return new ResponseEntity<KolichViewSerializable>(body,
+			merge(headers, contentType), status);
+	}
+	
+	public static final ResponseEntity<KolichViewSerializable>
+		getStreamingResponseEntity(final KolichViewSerializable body,
+			final MediaType contentType, final HttpStatus status) {
+		return getStreamingResponseEntity(body, null, contentType, status);
 	}
 	
 	public static final ResponseEntity<byte[]> getEmptyResponseEntity(
@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.controllers;
+
+import static org.springframework.http.HttpHeaders.readOnlyHttpHeaders;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.IMAGE_PNG;
+import static org.springframework.http.MediaType.TEXT_HTML;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+/**
+ * Shared, read-only {@link HttpHeaders} templates that carry nothing but
+ * a Content-Type, so that building a
+ * {@link org.springframework.http.ResponseEntity} for a given content
+ * type doesn't need a fresh header map every time.
+ */
+public final class KolichResponseHeaders {
+	
+	public static final HttpHeaders JSON_HEADERS = template(APPLICATION_JSON);
+	public static final HttpHeaders HTML_HEADERS = template(TEXT_HTML);
+	public static final HttpHeaders PNG_HEADERS = template(IMAGE_PNG);
+	
+	/**
+	 * Templates for any other content types, made on first use.  There
+	 * are only ever a handful of distinct content types in an app.
+	 */
+	private static final ConcurrentMap<MediaType, HttpHeaders> templates__ =
+		new ConcurrentHashMap<MediaType, HttpHeaders>();
+	static {
+		templates__.put(APPLICATION_JSON, JSON_HEADERS);
+		templates__.put(TEXT_HTML, HTML_HEADERS);
+		templates__.put(IMAGE_PNG, PNG_HEADERS);
+	}
+	
+	// Cannot instantiate.
+	private KolichResponseHeaders() {}
+	
+	private static final HttpHeaders template(final MediaType contentType) {
+		final HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(contentType);
+		return readOnlyHttpHeaders(headers);
+	}
+	
+	/**
+	 * Returns the shared, read-only template for the given content type.
+	 */
+	public static final HttpHeaders getHeaders(final MediaType contentType) {
+		HttpHeaders headers;
+		if((headers = templates__.get(contentType)) == null) {
+			final HttpHeaders created = template(contentType);
+			if((headers = templates__.putIfAbsent(contentType,
+				created)) == null) {
+				headers = created;
+			}
+		}
+		return headers;
+	}
+	
+	/**
+	 * Returns the given headers with their Content-Type set to the given
+	 * content type.  The given headers are never modified; a copy is only
+	 * made if they actually carry something the shared template for the
+	 * content type does not.
+	 */
+	public static final HttpHeaders merge(final HttpHeaders headers,
+		final MediaType contentType) {
+		if(headers == null || headers.isEmpty()) {
+			return getHeaders(contentType);
+		} else if(contentType.equals(headers.getContentType())) {
+			return headers;
+		}
+		final HttpHeaders merged = new HttpHeaders();
+		merged.putAll(headers);
+		merged.setContentType(contentType);
+		return merged;
+	}
+	
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.controllers;
+
+import static java.lang.Long.numberOfLeadingZeros;
+
+/**
+ * Bucket math of the log-linear latency histograms kept by
+ * {@link ClosureMetrics}, HdrHistogram style.  Latencies are recorded in
+ * microseconds; the first {@link #LINEAR_BUCKETS} buckets are exact, and
+ * every power of two above that is split into {@link #SUB_BUCKETS}
+ * linear sub-buckets, so any recorded value is off by at most 12.5%.
+ * Anything over roughly 12 days lands in the last bucket.
+ */
+final class LatencyHistogram {
+	
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	
+	private static final int LINEAR_BUCKETS = SUB_BUCKETS << 1;
+	private static final int FIRST_EXPONENT = SUB_BUCKET_BITS + 1;
+	private static final int MAX_EXPONENT = 40;
+	
+	static final int BUCKETS = LINEAR_BUCKETS +
+		((MAX_EXPONENT - FIRST_EXPONENT + 1) << SUB_BUCKET_BITS);
+	
+	// Cannot instantiate.
+	private LatencyHistogram() {}
+	
+	static final int bucketFor(final long micros) {
+		if(micros < LINEAR_BUCKETS) {
+			return (micros < 0L) ? 0 : (int)micros;
+		}
+		final int exponent = 63 - numberOfLeadingZeros(micros);
+		if(exponent > MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		final int sub = (int)((micros >>> (exponent - SUB_BUCKET_BITS)) &
+			(SUB_BUCKETS - 1));
+		return LINEAR_BUCKETS +
+			((exponent - FIRST_EXPONENT) << SUB_BUCKET_BITS) + sub;
+	}
+	
+	/**
+	 * The highest value, in microseconds, that lands in the given bucket.
+	 */
+	static final long highestValueIn(final int bucket) {
+		if(bucket < LINEAR_BUCKETS) {
+			return bucket;
+		}
+		final int exponent = ((bucket - LINEAR_BUCKETS) >>> SUB_BUCKET_BITS) +
+			FIRST_EXPONENT;
+		final int sub = (bucket - LINEAR_BUCKETS) & (SUB_BUCKETS - 1);
+		return ((long)(SUB_BUCKETS + sub + 1) <<
+			(exponent - SUB_BUCKET_BITS)) - 1L;
+	}
+	
+}
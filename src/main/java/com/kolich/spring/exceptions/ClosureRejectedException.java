@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.exceptions;
+
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a controller closure is not allowed to run, or to finish,
+ * because of its policy: its bulkhead or concurrency limit is saturated,
+ * or it blew through its deadline.  Maps to a 503 Service Unavailable,
+ * and never fills in a stack trace, so rejecting work under overload
+ * stays cheap.
+ */
+@ResponseStatus(SERVICE_UNAVAILABLE)
+public class ClosureRejectedException extends KolichSpringException {
+	
+	private static final long serialVersionUID = 5167214587395307621L;
+	
+	public ClosureRejectedException(String message) {
+		super(message);
+	}
+	
+	@Override
+	protected boolean isStackTraceWritable() {
+		// Rejections are expected under load, the stack trace is noise.
+		return false;
+	}
+
+}
@@ -30,8 +30,48 @@ public class InvalidResourceException extends KolichSpringException {
 
 	private static final long serialVersionUID = -6798856107791370647L;
 	
+	private static final String NO_PATH_MAPPING =
+		"No path mapping was found that matched to URL.";
+	
 	public InvalidResourceException(String message) {
 		super(message);
 	}
+	
+	/**
+	 * Returns a new stackless exception for a request that matched none
+	 * of the configured path mappings.  Cheap enough to throw on every
+	 * request of a scanner flood.  Not a shared instance: a thrown
+	 * exception can still have suppressed exceptions added to it, and a
+	 * shared one would hold on to every one of them.
+	 */
+	public static final InvalidResourceException noPathMapping() {
+		return new StacklessInvalidResourceException(NO_PATH_MAPPING);
+	}
+	
+	/**
+	 * Returns a new stackless exception with the given message, for
+	 * invalid resources that are expected and frequent, but need a
+	 * message of their own.
+	 */
+	public static final InvalidResourceException stackless(
+		final String message) {
+		return new StacklessInvalidResourceException(message);
+	}
+	
+	private static final class StacklessInvalidResourceException
+		extends InvalidResourceException {
+		
+		private static final long serialVersionUID = 3722309545125419846L;
+		
+		private StacklessInvalidResourceException(String message) {
+			super(message);
+		}
+		
+		@Override
+		protected boolean isStackTraceWritable() {
+			return false;
+		}
+		
+	}
 
 }
@@ -48,4 +48,53 @@ public class KolichSpringException extends KolichCommonException {
 		super();
 	}
 	
+	/**
+	 * Returns a new exception wrapping the given cause that skips filling
+	 * in its own stack trace; the stack trace of the cause says where
+	 * things went wrong anyway.  Meant for expected, frequent failures
+	 * where the cost of walking the stack adds up.
+	 */
+	public static KolichSpringException stackless(
+		final Throwable cause) {
+		return new StacklessKolichSpringException(null, cause);
+	}
+	
+	public static KolichSpringException stackless(final String message,
+		final Throwable cause) {
+		return new StacklessKolichSpringException(message, cause);
+	}
+	
+	/**
+	 * Subclasses that never need a stack trace, because they are thrown
+	 * as part of expected control flow, should return false.  Note this
+	 * is called from the constructor of {@link Throwable}, so it must not
+	 * depend on any instance state.
+	 */
+	protected boolean isStackTraceWritable() {
+		return true;
+	}
+	
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return (isStackTraceWritable()) ? super.fillInStackTrace() : this;
+	}
+	
+	private static final class StacklessKolichSpringException
+		extends KolichSpringException {
+		
+		private static final long serialVersionUID = -3187309413541961207L;
+		
+		private StacklessKolichSpringException(String message,
+			Throwable cause) {
+			super((message != null) ? message :
+				(cause != null) ? cause.toString() : null, cause);
+		}
+		
+		@Override
+		protected boolean isStackTraceWritable() {
+			return false;
+		}
+		
+	}
+	
 }
@@ -43,5 +43,32 @@ public class EnvironmentVariableTagException extends KolichSpringException {
 	public EnvironmentVariableTagException() {
 		super();
 	}
+	
+	/**
+	 * Returns a new exception wrapping the given cause that skips filling
+	 * in its own stack trace, see
+	 * {@link KolichSpringException#stackless(String, Throwable)}.
+	 */
+	public static final EnvironmentVariableTagException stackless(
+		final String message, final Throwable cause) {
+		return new StacklessEnvironmentVariableTagException(message, cause);
+	}
+	
+	private static final class StacklessEnvironmentVariableTagException
+		extends EnvironmentVariableTagException {
+		
+		private static final long serialVersionUID = 7604385217357281409L;
+		
+		private StacklessEnvironmentVariableTagException(String message,
+			Throwable cause) {
+			super(message, cause);
+		}
+		
+		@Override
+		protected boolean isStackTraceWritable() {
+			return false;
+		}
+		
+	}
 
 }
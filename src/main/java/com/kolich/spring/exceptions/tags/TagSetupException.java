@@ -43,5 +43,31 @@ public class TagSetupException extends KolichSpringException {
 	public TagSetupException() {
 		super();
 	}
+	
+	/**
+	 * Returns a new exception wrapping the given cause that skips filling
+	 * in its own stack trace, see
+	 * {@link KolichSpringException#stackless(String, Throwable)}.
+	 */
+	public static final TagSetupException stackless(final String message,
+		final Throwable cause) {
+		return new StacklessTagSetupException(message, cause);
+	}
+	
+	private static final class StacklessTagSetupException
+		extends TagSetupException {
+		
+		private static final long serialVersionUID = -1062435542372208187L;
+		
+		private StacklessTagSetupException(String message, Throwable cause) {
+			super(message, cause);
+		}
+		
+		@Override
+		protected boolean isStackTraceWritable() {
+			return false;
+		}
+		
+	}
 
 }
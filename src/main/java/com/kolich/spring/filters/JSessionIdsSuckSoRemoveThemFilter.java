@@ -34,6 +34,7 @@ import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
+import javax.servlet.SessionTrackingMode;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpServletResponseWrapper;
@@ -46,6 +47,37 @@ import javax.servlet.http.HttpServletResponseWrapper;
  *
  */
 public final class JSessionIdsSuckSoRemoveThemFilter implements Filter {
+	
+	/**
+	 * Never encodes the session ID into URL's.  One of these has to wrap
+	 * each response, but it has no per-request state beyond that.
+	 */
+	private static final class NoSessionIdResponseWrapper
+		extends HttpServletResponseWrapper {
+		
+		private NoSessionIdResponseWrapper(
+			final HttpServletResponse response) {
+			super(response);
+		}
+		
+		@Override
+		public String encodeRedirectURL(final String url) {
+			return url;
+		}
+		
+		@Override
+		public String encodeURL(final String url) {
+			return url;
+		}
+		
+	}
+	
+	/**
+	 * False if the container only ever tracks sessions with cookies (or
+	 * SSL), in which case it never encodes session ID's into URL's and
+	 * responses need not be wrapped at all.
+	 */
+	private boolean urlTracking_ = true;
 
 	@Override
 	public void doFilter(final ServletRequest req,
@@ -58,19 +90,12 @@ public final class JSessionIdsSuckSoRemoveThemFilter implements Filter {
         		(request.getQueryString() != null) ?
         			"?" + request.getQueryString() : "").toString();
         	response.sendRedirect(url);
+        	// The response is committed; running the rest of the chain
+        	// would only render a response nobody will ever see.
+        	return;
         }
-		final HttpServletResponseWrapper wrappedResponse =
-	    	new HttpServletResponseWrapper(response) {
-	        @Override
-	        public String encodeRedirectURL(final String url) {
-	            return url;
-	        }
-	        @Override
-	        public String encodeURL(final String url) {
-	        	return url;
-	        }
-		};
-		chain.doFilter(req, wrappedResponse);
+		chain.doFilter(req, (urlTracking_) ?
+			new NoSessionIdResponseWrapper(response) : res);
 	}
 	
 	@Override
@@ -80,7 +105,9 @@ public final class JSessionIdsSuckSoRemoveThemFilter implements Filter {
 
 	@Override
 	public void init(final FilterConfig config) throws ServletException {
-		// Nothing
+		urlTracking_ = config.getServletContext()
+			.getEffectiveSessionTrackingModes()
+			.contains(SessionTrackingMode.URL);
 	}
 	
 }
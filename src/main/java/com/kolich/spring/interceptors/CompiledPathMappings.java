@@ -0,0 +1,556 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.interceptors;
+
+import static java.util.regex.Pattern.CASE_INSENSITIVE;
+import static java.util.regex.Pattern.compile;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.kolich.spring.interceptors.RequestPathInterceptor.PathMapping;
+
+/**
+ * A compiled, single-pass matching engine built from a list of
+ * {@link PathMapping}'s.  Mappings are bucketed by HTTP method (with any
+ * wildcard mappings merged into every bucket) so that a request only
+ * ever looks at the mappings that could possibly apply to it.  Within
+ * a bucket, patterns of the form <code>^literal</code> are loaded into
+ * a case-insensitive prefix trie, and the remaining patterns are fused
+ * into a single alternation so that each request costs at most one
+ * regex scan.
+ * 
+ * The accept/reject result of {@link #matches(String, CharSequence)} is
+ * exactly the same as walking every mapping and calling
+ * {@link java.util.regex.Matcher#find()} on each one in turn.  Patterns
+ * that cannot be safely fused (back references, named groups, quoted
+ * sections, comments) are kept on the side and checked individually.
+ * 
+ * Every compiled pattern is assigned a slot, and each thread keeps its
+ * own array of {@link Matcher}'s indexed by slot which are reset and
+ * reused instead of being recreated on every request.
+ * 
+ * @author Mark Kolich
+ *
+ */
+final class CompiledPathMappings {
+	
+	private static final Logger logger__ = 
+		LoggerFactory.getLogger(CompiledPathMappings.class);
+	
+	private static final String REGEX_START_ANCHOR = "^";
+	private static final String REGEX_ALTERNATION = "|";
+	private static final String REGEX_GROUP_OPEN = "(?:";
+	private static final String REGEX_INLINE_FLAG_CHARS = "idmsuUx-";
+	private static final String REGEX_GROUP_CLOSE = ")";
+	
+	/**
+	 * Reused {@link Matcher}'s are reset against this once they are done
+	 * so they don't hold onto the last request URL they were given.
+	 */
+	private static final String EMPTY_INPUT = "";
+	
+	/**
+	 * Characters that carry special meaning in a regular expression
+	 * outside of a character class.  A pattern containing any of these
+	 * (unescaped) is not a plain literal.
+	 */
+	private static final String REGEX_META_CHARS = "\\^$.|?*+()[]{}";
+	
+	/**
+	 * Method buckets, keyed by folded method name and any aliases of it
+	 * that we saw in the mappings themselves.  Every bucket already
+	 * includes the wildcard mappings.
+	 */
+	private final Map<String, Bucket> buckets_;
+	
+	/**
+	 * Bucket containing only the wildcard mappings; used for any request
+	 * method that has no explicit mappings of its own.
+	 */
+	private final Bucket wildcard_;
+	
+	/**
+	 * Per-thread {@link Matcher}'s, one per compiled pattern slot, created
+	 * lazily the first time a thread needs a given slot.
+	 */
+	private final ThreadLocal<Matcher[]> matchers_;
+	
+	private CompiledPathMappings(final Map<String, Bucket> buckets,
+		final Bucket wildcard, final int slots) {
+		buckets_ = buckets;
+		wildcard_ = wildcard;
+		matchers_ = new ThreadLocal<Matcher[]>() {
+			@Override
+			protected Matcher[] initialValue() {
+				return new Matcher[slots];
+			}
+		};
+	}
+	
+	/**
+	 * Returns true if any of the compiled mappings that apply to the
+	 * given HTTP method can be found in the given URL.
+	 */
+	public boolean matches(final String method, final CharSequence url) {
+		return getBucket(method).matches(matchers_.get(), url);
+	}
+	
+	private Bucket getBucket(final String method) {
+		if(method == null) {
+			return wildcard_;
+		}
+		Bucket bucket = buckets_.get(method);
+		if(bucket == null && (bucket = buckets_.get(foldMethod(method))) == null) {
+			bucket = wildcard_;
+		}
+		return bucket;
+	}
+	
+	public static final CompiledPathMappings build(
+		final List<PathMapping> mappings) {
+		final List<PathMapping> wildcards = new ArrayList<PathMapping>();
+		// Keyed by folded method name, preserves declaration order.
+		final Map<String, List<PathMapping>> byMethod =
+			new HashMap<String, List<PathMapping>>();
+		for(final PathMapping pm : mappings) {
+			if(pm.isWildcardMethod()) {
+				wildcards.add(pm);
+			} else {
+				final String folded = foldMethod(pm.getMethod());
+				List<PathMapping> list = byMethod.get(folded);
+				if(list == null) {
+					byMethod.put(folded, (list = new ArrayList<PathMapping>()));
+				}
+				list.add(pm);
+			}
+		}
+		final Bucket wildcard = new Bucket(wildcards, 0);
+		int slots = wildcard.getSlotCount();
+		final Map<String, Bucket> buckets = new HashMap<String, Bucket>();
+		for(final Map.Entry<String, List<PathMapping>> e : byMethod.entrySet()) {
+			final List<PathMapping> merged = new ArrayList<PathMapping>(wildcards);
+			merged.addAll(e.getValue());
+			final Bucket bucket = new Bucket(merged, slots);
+			slots += bucket.getSlotCount();
+			// Register the bucket under its folded name, and under every
+			// spelling of the method we saw so that the common case of a
+			// request method that matches the configured spelling exactly
+			// never has to be folded.
+			buckets.put(e.getKey(), bucket);
+			for(final PathMapping pm : e.getValue()) {
+				buckets.put(pm.getMethod(), bucket);
+				buckets.put(pm.getMethod().toUpperCase(Locale.US), bucket);
+			}
+			logger__.debug("Compiled method bucket: " + e.getKey() +
+				" -> " + bucket);
+		}
+		// Only keep aliases that genuinely fold to the same key; anything
+		// else could break the equalsIgnoreCase() semantics.
+		final Map<String, Bucket> checked = new HashMap<String, Bucket>();
+		for(final Map.Entry<String, Bucket> e : buckets.entrySet()) {
+			if(buckets.get(foldMethod(e.getKey())) == e.getValue()) {
+				checked.put(e.getKey(), e.getValue());
+			}
+		}
+		return new CompiledPathMappings(checked, wildcard, slots);
+	}
+	
+	/**
+	 * Folds the given method name such that two method names fold to
+	 * the same value if and only if {@link String#equalsIgnoreCase(String)}
+	 * considers them equal.
+	 */
+	private static final String foldMethod(final String method) {
+		final int length = method.length();
+		for(int i = 0; i < length; i++) {
+			final char c = method.charAt(i);
+			if(foldMethodChar(c) != c) {
+				final char[] folded = method.toCharArray();
+				for(int j = i; j < length; j++) {
+					folded[j] = foldMethodChar(folded[j]);
+				}
+				return new String(folded);
+			}
+		}
+		// Already folded, nothing to do.
+		return method;
+	}
+	
+	private static final char foldMethodChar(final char c) {
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+	
+	/**
+	 * Folds a character the same way {@link Pattern#CASE_INSENSITIVE}
+	 * does without {@link Pattern#UNICODE_CASE}: only US-ASCII letters
+	 * are case folded, everything else must match exactly.
+	 */
+	private static final char foldUrlChar(final char c) {
+		return (c >= 'A' && c <= 'Z') ? (char)(c + ('a' - 'A')) : c;
+	}
+	
+	/**
+	 * If the given pattern is an anchored plain literal, like
+	 * <code>^http://example\.com/</code>, returns the literal it
+	 * anchors.  Otherwise returns null.
+	 */
+	private static final String getAnchoredLiteral(final String regex) {
+		if(!regex.startsWith(REGEX_START_ANCHOR)) {
+			return null;
+		}
+		final StringBuilder sb = new StringBuilder(regex.length());
+		for(int i = REGEX_START_ANCHOR.length(), l = regex.length(); i < l; i++) {
+			char c = regex.charAt(i);
+			if(c == '\\') {
+				// A backslash in front of any non-alphanumeric character
+				// is always a literal escape.  Anything else is a proper
+				// regex construct (\d, \Q, \1, ...) so bail.
+				if(++i >= l || Character.isLetterOrDigit(c = regex.charAt(i))) {
+					return null;
+				}
+			} else if(REGEX_META_CHARS.indexOf(c) >= 0) {
+				return null;
+			}
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Returns true if the given regex can only ever match at the start of
+	 * the input: it starts with ^, and has no alternation outside of a
+	 * group which could let another branch match anywhere.  Patterns with
+	 * inline flags are never considered anchored, since multiline mode
+	 * would let ^ match after any line terminator.
+	 */
+	private static final boolean isStartAnchored(final String regex) {
+		if(!regex.startsWith(REGEX_START_ANCHOR)) {
+			return false;
+		}
+		int depth = 0, classDepth = 0;
+		for(int i = 1, l = regex.length(); i < l; i++) {
+			final char c = regex.charAt(i);
+			if(c == '\\') {
+				// Skip whatever is escaped.
+				i++;
+			} else if(c == '[') {
+				// Character classes nest, as in [a-z&&[^q]].
+				classDepth++;
+				// A ] right after the opening [ (or [^) is a literal.
+				if(i + 1 < l && regex.charAt(i + 1) == '^') {
+					i++;
+				}
+				if(i + 1 < l && regex.charAt(i + 1) == ']') {
+					i++;
+				}
+			} else if(classDepth > 0) {
+				if(c == ']') {
+					classDepth--;
+				}
+			} else if(c == '(') {
+				if(i + 2 < l && regex.charAt(i + 1) == '?' &&
+					REGEX_INLINE_FLAG_CHARS.indexOf(regex.charAt(i + 2)) >= 0) {
+					return false;
+				}
+				depth++;
+			} else if(c == ')') {
+				depth--;
+			} else if(c == '|' && depth == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns true if the given pattern can be safely wrapped in a
+	 * non-capturing group and placed into an alternation with other
+	 * patterns without changing what it matches.
+	 */
+	private static final boolean isFusable(final String regex) {
+		for(int i = 0, l = regex.length(); i < l; i++) {
+			final char c = regex.charAt(i);
+			if(c == '\\') {
+				if(++i >= l) {
+					return false;
+				}
+				final char n = regex.charAt(i);
+				// Numbered or named back references would point at the
+				// wrong group once fused, and \Q...\E quoting could run
+				// past the end of the wrapping group.
+				if(Character.isDigit(n) || n == 'k' || n == 'Q') {
+					return false;
+				}
+			} else if(c == '(' && i + 2 < l && regex.charAt(i + 1) == '?') {
+				final char n = regex.charAt(i + 2);
+				// Named capturing groups "(?<name>" (but lookbehinds are
+				// fine), and inline flag groups that could turn on
+				// comments mode.
+				if((n == '<' && i + 3 < l && regex.charAt(i + 3) != '=' &&
+					regex.charAt(i + 3) != '!') || isInlineCommentsFlag(regex, i + 2)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	private static final boolean isInlineCommentsFlag(final String regex,
+		final int start) {
+		for(int i = start, l = regex.length(); i < l; i++) {
+			final char c = regex.charAt(i);
+			if(c == 'x') {
+				return true;
+			} else if(REGEX_INLINE_FLAG_CHARS.indexOf(c) < 0) {
+				return false;
+			}
+		}
+		return false;
+	}
+	
+	static final class Bucket {
+		
+		private final LiteralPrefixTrie prefixes_;
+		private final Pattern anchored_;
+		private final Pattern fused_;
+		private final Pattern[] others_;
+		
+		/**
+		 * The per-thread {@link Matcher} slot of the fused start anchored
+		 * pattern; the fused pattern, then the other patterns follow it
+		 * in order.
+		 */
+		private final int firstSlot_;
+		
+		private final int size_;
+		
+		private Bucket(final List<PathMapping> mappings, final int firstSlot) {
+			final LiteralPrefixTrie prefixes = new LiteralPrefixTrie();
+			final List<Pattern> anchored = new ArrayList<Pattern>();
+			final List<Pattern> fusable = new ArrayList<Pattern>();
+			final List<Pattern> others = new ArrayList<Pattern>();
+			for(final PathMapping pm : mappings) {
+				final String regex = pm.getPattern().pattern();
+				final String literal;
+				if((literal = getAnchoredLiteral(regex)) != null) {
+					prefixes.add(literal);
+				} else if(!isFusable(regex)) {
+					others.add(pm.getPattern());
+				} else if(isStartAnchored(regex)) {
+					anchored.add(pm.getPattern());
+				} else {
+					fusable.add(pm.getPattern());
+				}
+			}
+			prefixes_ = prefixes.isEmpty() ? null : prefixes;
+			anchored_ = fuseOrSpill(anchored, others);
+			fused_ = fuseOrSpill(fusable, others);
+			others_ = others.toArray(new Pattern[others.size()]);
+			firstSlot_ = firstSlot;
+			size_ = mappings.size();
+		}
+		
+		public int getSlotCount() {
+			return others_.length + 2;
+		}
+		
+		public boolean matches(final Matcher[] matchers,
+			final CharSequence url) {
+			if(prefixes_ != null && prefixes_.matchesPrefixOf(url)) {
+				return true;
+			}
+			// Every alternative of the anchored pattern starts with ^, so
+			// it can only ever match at the very start of the URL; no
+			// point in letting find() try every other position too.
+			if(anchored_ != null && find(matchers, firstSlot_, anchored_,
+				url, true)) {
+				return true;
+			}
+			if(fused_ != null && find(matchers, firstSlot_ + 1, fused_,
+				url, false)) {
+				return true;
+			}
+			for(int i = 0; i < others_.length; i++) {
+				if(find(matchers, firstSlot_ + 2 + i, others_[i], url,
+					false)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		private static final boolean find(final Matcher[] matchers,
+			final int slot, final Pattern pattern, final CharSequence input,
+			final boolean lookingAt) {
+			Matcher m;
+			if((m = matchers[slot]) == null) {
+				matchers[slot] = (m = pattern.matcher(input));
+			} else {
+				m.reset(input);
+			}
+			try {
+				return (lookingAt) ? m.lookingAt() : m.find();
+			} finally {
+				m.reset(EMPTY_INPUT);
+			}
+		}
+		
+		/**
+		 * Fuses the given patterns into one.  If they cannot be fused,
+		 * they're spilled into the given list of others, to be checked
+		 * one by one, and null is returned.
+		 */
+		private static final Pattern fuseOrSpill(final List<Pattern> patterns,
+			final List<Pattern> others) {
+			Pattern fused = null;
+			if(patterns.size() == 1) {
+				fused = patterns.get(0);
+			} else if(patterns.size() > 1) {
+				if((fused = fuse(patterns)) == null) {
+					// Could not fuse for whatever reason, so just fall
+					// back to checking each pattern on its own.
+					others.addAll(0, patterns);
+				}
+			}
+			return fused;
+		}
+		
+		private static final Pattern fuse(final List<Pattern> patterns) {
+			final StringBuilder sb = new StringBuilder();
+			int groups = 0;
+			for(final Pattern p : patterns) {
+				if(sb.length() > 0) {
+					sb.append(REGEX_ALTERNATION);
+				}
+				sb.append(REGEX_GROUP_OPEN).append(p.pattern())
+					.append(REGEX_GROUP_CLOSE);
+				groups += p.matcher("").groupCount();
+			}
+			try {
+				final Pattern fused = compile(sb.toString(), CASE_INSENSITIVE);
+				// Sanity check; if the group count doesn't add up then
+				// something in one of the patterns swallowed our wrapping
+				// and the fused pattern cannot be trusted.
+				return (fused.matcher("").groupCount() == groups) ? fused : null;
+			} catch (PatternSyntaxException e) {
+				logger__.debug("Failed to fuse path mappings: " + sb, e);
+				return null;
+			}
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("Bucket(mappings=%d, prefixes=%s, " +
+				"anchored=%s, fused=%s, others=%d)", size_, prefixes_,
+				anchored_, fused_, others_.length);
+		}
+		
+	}
+	
+	/**
+	 * A simple case-insensitive trie of literal URL prefixes.  Lookups
+	 * walk the input at most once and allocate nothing.
+	 */
+	static final class LiteralPrefixTrie {
+		
+		private final Node root_ = new Node();
+		private int size_ = 0;
+		
+		public void add(final String literal) {
+			Node node = root_;
+			for(int i = 0, l = literal.length(); i < l; i++) {
+				node = node.getOrAddChild(foldUrlChar(literal.charAt(i)));
+			}
+			node.terminal_ = true;
+			size_++;
+		}
+		
+		public boolean isEmpty() {
+			return size_ == 0;
+		}
+		
+		public boolean matchesPrefixOf(final CharSequence input) {
+			Node node = root_;
+			for(int i = 0, l = input.length(); !node.terminal_; i++) {
+				if(i >= l || (node = node.getChild(foldUrlChar(input.charAt(i)))) == null) {
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		@Override
+		public String toString() {
+			return Integer.toString(size_);
+		}
+		
+		private static final class Node {
+			
+			private char[] keys_ = new char[0];
+			private Node[] children_ = new Node[0];
+			private boolean terminal_ = false;
+			
+			private Node getChild(final char c) {
+				for(int i = 0; i < keys_.length; i++) {
+					if(keys_[i] == c) {
+						return children_[i];
+					}
+				}
+				return null;
+			}
+			
+			private Node getOrAddChild(final char c) {
+				Node child;
+				if((child = getChild(c)) == null) {
+					final int l = keys_.length;
+					final char[] keys = new char[l + 1];
+					final Node[] children = new Node[l + 1];
+					System.arraycopy(keys_, 0, keys, 0, l);
+					System.arraycopy(children_, 0, children, 0, l);
+					keys[l] = c;
+					children[l] = (child = new Node());
+					keys_ = keys;
+					children_ = children;
+				}
+				return child;
+			}
+			
+		}
+		
+	}
+	
+}
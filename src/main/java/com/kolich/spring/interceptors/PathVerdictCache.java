@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.interceptors;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A bounded, concurrent cache of request path match verdicts keyed by
+ * HTTP method and request URL.  Positive and negative verdicts are kept
+ * in two separately sized caches so that a flood of hostile scanner
+ * traffic (which only ever produces negative verdicts) can never evict
+ * the hot entries of real traffic.
+ * 
+ * The request URL is used as-is in the cache key; any normalization of
+ * it could change the verdict of a case-sensitive mapping.
+ * 
+ * @author Mark Kolich
+ *
+ */
+final class PathVerdictCache {
+	
+	private static final char KEY_SEPARATOR = ' ';
+	
+	/**
+	 * URL's longer than this are never cached; they're almost always
+	 * junk and would only waste space in the cache.
+	 */
+	private static final int MAX_CACHEABLE_URL_LENGTH = 2048;
+	
+	/**
+	 * Returned from {@link #getVerdict(String)} when neither cache has
+	 * an answer and the caller must compute the verdict itself.
+	 */
+	public static final Boolean NO_VERDICT = null;
+	
+	private final Cache<String, Boolean> positive_;
+	private final Cache<String, Boolean> negative_;
+	
+	private final AtomicLong hits_ = new AtomicLong(0L);
+	private final AtomicLong negativeHits_ = new AtomicLong(0L);
+	private final AtomicLong misses_ = new AtomicLong(0L);
+	
+	public PathVerdictCache(final long maxPositiveEntries,
+		final long maxNegativeEntries) {
+		positive_ = newCache(maxPositiveEntries);
+		negative_ = newCache(maxNegativeEntries);
+	}
+	
+	private static final Cache<String, Boolean> newCache(final long size) {
+		return (size > 0L) ?
+			CacheBuilder.newBuilder().maximumSize(size).<String, Boolean>build() :
+			null;
+	}
+	
+	/**
+	 * Returns the cache key for the given method and URL, or null if
+	 * the request should not be cached at all.
+	 */
+	public String getKey(final String method, final CharSequence url) {
+		if(method == null || url.length() > MAX_CACHEABLE_URL_LENGTH) {
+			return null;
+		}
+		return new StringBuilder(method.length() + 1 + url.length())
+			.append(method).append(KEY_SEPARATOR).append(url).toString();
+	}
+	
+	/**
+	 * Returns {@link Boolean#TRUE} or {@link Boolean#FALSE} if a verdict
+	 * for the given key is cached, otherwise {@link #NO_VERDICT}.
+	 */
+	public Boolean getVerdict(final String key) {
+		if(positive_ != null && positive_.getIfPresent(key) != null) {
+			hits_.incrementAndGet();
+			return Boolean.TRUE;
+		} else if(negative_ != null && negative_.getIfPresent(key) != null) {
+			negativeHits_.incrementAndGet();
+			return Boolean.FALSE;
+		}
+		misses_.incrementAndGet();
+		return NO_VERDICT;
+	}
+	
+	public void putVerdict(final String key, final boolean verdict) {
+		final Cache<String, Boolean> cache = (verdict) ? positive_ : negative_;
+		if(cache != null) {
+			cache.put(key, verdict);
+		}
+	}
+	
+	public long getHitCount() {
+		return hits_.get();
+	}
+	
+	public long getNegativeHitCount() {
+		return negativeHits_.get();
+	}
+	
+	public long getMissCount() {
+		return misses_.get();
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("PathVerdictCache(positive=%d, negative=%d, " +
+			"hits=%d, negativeHits=%d, misses=%d)",
+			(positive_ != null) ? positive_.size() : 0L,
+			(negative_ != null) ? negative_.size() : 0L,
+			getHitCount(), getNegativeHitCount(), getMissCount());
+	}
+	
+}
@@ -30,10 +30,10 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static java.util.regex.Pattern.CASE_INSENSITIVE;
 import static java.util.regex.Pattern.compile;
+import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.servlet.http.HttpServletRequest;
@@ -52,8 +52,61 @@ public final class RequestPathInterceptor extends HandlerInterceptorAdapter
 	private static final Logger logger__ = 
 		LoggerFactory.getLogger(RequestPathInterceptor.class);
 	
+	private static final String SCHEME_HTTP = "http";
+	private static final String SCHEME_HTTPS = "https";
+	private static final String SCHEME_SEPARATOR = "://";
+	private static final char PORT_SEPARATOR = ':';
+	
+	private static final int DEFAULT_HTTP_PORT = 80;
+	private static final int DEFAULT_HTTPS_PORT = 443;
+	
+	/**
+	 * Per-thread buffers used to rebuild the request URL without
+	 * allocating.  A buffer that grew past the max capacity because of
+	 * some ridiculously long URL is thrown away instead of being kept
+	 * around forever.
+	 */
+	private static final int URL_BUFFER_INITIAL_CAPACITY = 256;
+	private static final int URL_BUFFER_MAX_CAPACITY = 8192;
+	private static final ThreadLocal<StringBuilder> urlBuffer__ =
+		new ThreadLocal<StringBuilder>() {
+			@Override
+			protected StringBuilder initialValue() {
+				return new StringBuilder(URL_BUFFER_INITIAL_CAPACITY);
+			}
+		};
+	
 	private List<String> requestMappings_ = new ArrayList<String>();	
 	private List<PathMapping> mappings_ = new ArrayList<PathMapping>();
+	
+	/**
+	 * The compiled matching engine, built once from the mappings above
+	 * in {@link #afterPropertiesSet()}.
+	 */
+	private CompiledPathMappings compiled_ = null;
+	
+	/**
+	 * If true, the request URL is rebuilt from the scheme, server name,
+	 * port and request URI into a reusable per-thread buffer instead of
+	 * asking the container for a brand new one via
+	 * {@link HttpServletRequest#getRequestURL()}.
+	 */
+	private boolean reuseRequestUrlBuffer_ = false;
+	
+	/**
+	 * Maximum number of positive and negative match verdicts to cache.
+	 * Both default to zero, which disables the verdict cache entirely.
+	 * These are sized separately so that hostile scanner traffic (all
+	 * negative verdicts) cannot flush the hot positive entries.
+	 */
+	private long verdictCacheSize_ = 0L;
+	private long negativeVerdictCacheSize_ = 0L;
+	private PathVerdictCache verdicts_ = null;
+	
+	/**
+	 * What to do with a request that matches none of our mappings.
+	 */
+	private RejectionStrategy rejectionStrategy_ = RejectionStrategy.EXCEPTION;
 		
 	@Override
 	public void afterPropertiesSet() throws Exception {
@@ -74,40 +127,172 @@ public final class RequestPathInterceptor extends HandlerInterceptorAdapter
 		// in flames.
 		checkState(!mappings_.isEmpty(), "Request path mappings cannot " +
 			"be empty!");
+		// Bucket, trie and fuse the mappings so that each incoming request
+		// only costs a single pass.
+		compiled_ = CompiledPathMappings.build(mappings_);
+		if(verdictCacheSize_ > 0L || negativeVerdictCacheSize_ > 0L) {
+			verdicts_ = new PathVerdictCache(verdictCacheSize_,
+				negativeVerdictCacheSize_);
+		}
 	}
 	
 	@Override
 	public boolean preHandle(final HttpServletRequest request,
 		final HttpServletResponse response, final Object handler)
 		throws Exception {
-		final String url = request.getRequestURL().toString();
-		boolean found = false;
-		for(final PathMapping pm : mappings_) {
-			// Does the incoming request match the request of this mapping?
-			if(pm.isWildcardMethod() || pm.getMethod().equalsIgnoreCase(request.getMethod())) {
-				if(pm.getMatcher(url).find()) {
-					found = true;
-					break;
-				}
-			}
-		}
-		// If we got here, and found is false, that means that the incoming
+		// Never hand the StringBuffer from getRequestURL() to the regex
+		// engine as is; every one of its charAt() calls is synchronized.
+		final CharSequence url = (reuseRequestUrlBuffer_) ?
+			getRequestUrl(request) : request.getRequestURL().toString();
+		// If we got here, and nothing matched, that means that the incoming
 		// request path does not match any of our expected mappings.
-		if(!found) {
+		if(!matches(request.getMethod(), url)) {
+			return reject(response, url);
+		}
+		// Always return true.
+		return true;
+	}
+	
+	private boolean reject(final HttpServletResponse response,
+		final CharSequence url) throws Exception {
+		switch(rejectionStrategy_) {
+		case STATUS:
+			if(logger__.isDebugEnabled()) {
+				logger__.debug("No path mapping was found that matched " +
+					"to URL, sending " + SC_NOT_FOUND + ": " + url);
+			}
+			// Tell the DispatcherServlet to stop right here; no handler,
+			// no view, and no exception resolvers.
+			response.setStatus(SC_NOT_FOUND);
+			return false;
+		case STACKLESS_EXCEPTION:
+			if(logger__.isDebugEnabled()) {
+				logger__.debug("No path mapping was found that matched " +
+					"to URL: " + url);
+			}
+			throw InvalidResourceException.noPathMapping();
+		default:
 			logger__.debug("No path mapping was found that matched " +
 				"to URL: " + url);
 			throw new InvalidResourceException("No path mapping was found " +
 				"that matched to URL: " + url);
 		}
-		// Always return true.
-		return true;
+	}
+	
+	private boolean matches(final String method, final CharSequence url) {
+		if(verdicts_ == null) {
+			return compiled_.matches(method, url);
+		}
+		final String key;
+		if((key = verdicts_.getKey(method, url)) == null) {
+			return compiled_.matches(method, url);
+		}
+		Boolean verdict;
+		if((verdict = verdicts_.getVerdict(key)) == PathVerdictCache.NO_VERDICT) {
+			verdict = compiled_.matches(method, url);
+			verdicts_.putVerdict(key, verdict);
+		}
+		return verdict;
 	}
 	
 	public void setRequestMappings(List<String> requestMappings) {
 		requestMappings_ = requestMappings;
 	}
 	
-	private static final class PathMapping {
+	public void setReuseRequestUrlBuffer(boolean reuseRequestUrlBuffer) {
+		reuseRequestUrlBuffer_ = reuseRequestUrlBuffer;
+	}
+	
+	public void setRejectionStrategy(RejectionStrategy rejectionStrategy) {
+		rejectionStrategy_ = checkNotNull(rejectionStrategy,
+			"Rejection strategy cannot be null");
+	}
+	
+	public void setVerdictCacheSize(long verdictCacheSize) {
+		verdictCacheSize_ = verdictCacheSize;
+	}
+	
+	public void setNegativeVerdictCacheSize(long negativeVerdictCacheSize) {
+		negativeVerdictCacheSize_ = negativeVerdictCacheSize;
+	}
+	
+	/**
+	 * Number of requests answered from the positive verdict cache.
+	 */
+	public long getVerdictCacheHitCount() {
+		return (verdicts_ != null) ? verdicts_.getHitCount() : 0L;
+	}
+	
+	/**
+	 * Number of requests answered from the negative verdict cache.
+	 */
+	public long getNegativeVerdictCacheHitCount() {
+		return (verdicts_ != null) ? verdicts_.getNegativeHitCount() : 0L;
+	}
+	
+	/**
+	 * Number of requests that missed both verdict caches and had to be
+	 * matched against the compiled mappings.
+	 */
+	public long getVerdictCacheMissCount() {
+		return (verdicts_ != null) ? verdicts_.getMissCount() : 0L;
+	}
+	
+	/**
+	 * Rebuilds the request URL, exactly like the container would in
+	 * {@link HttpServletRequest#getRequestURL()}, into a per-thread buffer.
+	 * The returned sequence is only valid until the next call on the
+	 * same thread.
+	 */
+	private static final CharSequence getRequestUrl(
+		final HttpServletRequest request) {
+		StringBuilder sb = urlBuffer__.get();
+		if(sb.capacity() > URL_BUFFER_MAX_CAPACITY) {
+			urlBuffer__.set(sb = new StringBuilder(URL_BUFFER_INITIAL_CAPACITY));
+		}
+		sb.setLength(0);
+		final String scheme = request.getScheme();
+		int port = request.getServerPort();
+		if(port < 0) {
+			port = DEFAULT_HTTP_PORT;
+		}
+		sb.append(scheme).append(SCHEME_SEPARATOR)
+			.append(request.getServerName());
+		if((SCHEME_HTTP.equals(scheme) && port != DEFAULT_HTTP_PORT) ||
+			(SCHEME_HTTPS.equals(scheme) && port != DEFAULT_HTTPS_PORT)) {
+			sb.append(PORT_SEPARATOR).append(port);
+		}
+		return sb.append(request.getRequestURI());
+	}
+	
+	/**
+	 * How a request that matches none of the path mappings is rejected.
+	 */
+	public static enum RejectionStrategy {
+		
+		/**
+		 * Throw a new {@link InvalidResourceException} with the offending
+		 * URL in its message, and a full stack trace.  The default.
+		 */
+		EXCEPTION,
+		
+		/**
+		 * Throw an {@link InvalidResourceException} that carries no
+		 * stack trace and no URL.  Still lets the usual exception
+		 * resolvers render a proper 404 page.
+		 */
+		STACKLESS_EXCEPTION,
+		
+		/**
+		 * Set a 404 status directly on the response and return false
+		 * from {@link RequestPathInterceptor#preHandle}; no exception
+		 * and no error page.  The cheapest option under scanner floods.
+		 */
+		STATUS;
+		
+	}
+	
+	static final class PathMapping {
 		
 		private static final String MAPPING_COLON = ":";
 		private static final String MAPPING_WILDCARD_METHOD = "*";
@@ -115,7 +300,7 @@ public final class RequestPathInterceptor extends HandlerInterceptorAdapter
 		private final String method_;
 		private final Pattern regex_;
 		
-		private PathMapping(final String mapping) {
+		PathMapping(final String mapping) {
 			checkNotNull(mapping, "Mapping cannot be null");
 			final String[] tokens = mapping.split(MAPPING_COLON, 2);
 			checkState(tokens.length >= 2, "Could not split mapping into " +
@@ -134,8 +319,8 @@ public final class RequestPathInterceptor extends HandlerInterceptorAdapter
 			return method_.equals(MAPPING_WILDCARD_METHOD);
 		}
 		
-		public Matcher getMatcher(final String input) {
-			return regex_.matcher(input);
+		public Pattern getPattern() {
+			return regex_;
 		}
 		
 		@Override
@@ -26,8 +26,14 @@
 
 package com.kolich.spring.tags.environment;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.naming.Binding;
 import javax.naming.Context;
 import javax.naming.InitialContext;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 
 import com.kolich.spring.exceptions.tags.EnvironmentVariableTagException;
@@ -40,6 +46,14 @@ public abstract class EnvironmentTag extends ContextAwareTag {
 	
 	private static final String CTX_COMP_ENV = "java:comp/env";
 	
+	/**
+	 * Context-wide init parameter which, when "true", has every binding
+	 * under java:comp/env loaded into the cache up front, the first time
+	 * any environment variable is looked up.
+	 */
+	public static final String PRELOAD_INIT_PARAM =
+		"kolich.environment.preload";
+	
 	private static final Context environment__;
 	static {
 		try {
@@ -49,6 +63,16 @@ public abstract class EnvironmentTag extends ContextAwareTag {
 				"context.", e);
 		}
 	}
+	
+	/**
+	 * Entries under java:comp/env cannot change at runtime, so every
+	 * lookup is cached here for good.  Names that were not found map to
+	 * the {@link NameNotFoundException} that said so.
+	 */
+	private static final ConcurrentMap<String, Object> cache__ =
+		new ConcurrentHashMap<String, Object>();
+	
+	private static volatile boolean preloaded__ = false;
 		
 	/**
 	 * Returns a String containing the value of the named context-wide
@@ -57,12 +81,33 @@ public abstract class EnvironmentTag extends ContextAwareTag {
 	 * @return
 	 */
 	protected final String getEnvironmentVariable(final String name) {
+		if(!preloaded__) {
+			preload(Boolean.parseBoolean(
+				getServletContext().getInitParameter(PRELOAD_INIT_PARAM)));
+		}
+		Object value;
+		if((value = cache__.get(name)) == null) {
+			value = lookup(name);
+			cache__.putIfAbsent(name, value);
+		}
+		if(value instanceof NameNotFoundException) {
+			// A cached miss; the cause already carries a stack trace.
+			throw EnvironmentVariableTagException.stackless("Could not " +
+				"lookup Environment variable ('" + name + "')",
+				(NameNotFoundException)value);
+		}
+		return (String)value;
+	}
+	
+	private static final Object lookup(final String name) {
 		// Threads that need to access a single InitialContext instance
 		// concurrently should synchronize amongst themselves and provide
-		// the necessary locking.
+		// the necessary locking.  Only cache misses ever get here.
 		synchronized(environment__) {
 			try {
-				return (String)environment__.lookup(name);
+				return environment__.lookup(name);
+			} catch (NameNotFoundException e) {
+				return e;
 			} catch (NamingException e) {
 				throw new EnvironmentVariableTagException("Could not " +
 					"lookup Environment variable ('" + name + "')", e);
@@ -70,4 +115,40 @@ public abstract class EnvironmentTag extends ContextAwareTag {
 		}
 	}
 	
-}
\ No newline at end of file
+	private static final void preload(final boolean enabled) {
+		synchronized(environment__) {
+			if(preloaded__) {
+				return;
+			}
+			if(enabled) {
+				try {
+					preload(environment__, "");
+				} catch (NamingException e) {
+					throw new EnvironmentVariableTagException("Could not " +
+						"preload Environment variables.", e);
+				}
+			}
+			preloaded__ = true;
+		}
+	}
+	
+	private static final void preload(final Context context,
+		final String prefix) throws NamingException {
+		final NamingEnumeration<Binding> bindings = context.listBindings("");
+		try {
+			while(bindings.hasMore()) {
+				final Binding binding = bindings.next();
+				final String name = prefix + binding.getName();
+				final Object value = binding.getObject();
+				if(value instanceof Context) {
+					preload((Context)value, name + "/");
+				} else if(value != null) {
+					cache__.putIfAbsent(name, value);
+				}
+			}
+		} finally {
+			bindings.close();
+		}
+	}
+	
+}
@@ -26,12 +26,26 @@
 
 package com.kolich.spring.tags.parameter;
 
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+
 import com.kolich.spring.tags.ContextAwareTag;
 
 public abstract class ParameterTag extends ContextAwareTag {
 
 	private static final long serialVersionUID = 8156385022283270968L;
 	
+	/**
+	 * Name of the {@link ServletContext} attribute the immutable snapshot
+	 * of its init parameters is kept under.
+	 */
+	public static final String PARAMETERS_ATTRIBUTE =
+		ParameterTag.class.getName() + ".PARAMETERS";
+	
 	/**
 	 * Returns a String containing the value of the named context-wide
 	 * initialization parameter, or null if the parameter does not exist.
@@ -39,7 +53,49 @@ public abstract class ParameterTag extends ContextAwareTag {
 	 * @return
 	 */
 	protected final String getParameter(final String name) {
-		return getServletContext().getInitParameter(name);
+		return getParameters().get(name);
+	}
+	
+	/**
+	 * Returns an immutable snapshot of all context-wide initialization
+	 * parameters.  Init parameters cannot change once the context is
+	 * initialized, so the snapshot is taken once per context, the first
+	 * time any parameter tag asks, and kept as a context attribute.
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	protected final Map<String, String> getParameters() {
+		final ServletContext context = getServletContext();
+		Map<String, String> parameters;
+		if((parameters = (Map<String, String>)context.getAttribute(
+			PARAMETERS_ATTRIBUTE)) == null) {
+			// Racing threads build identical snapshots; last one wins.
+			parameters = snapshot(context);
+			context.setAttribute(PARAMETERS_ATTRIBUTE, parameters);
+		}
+		return parameters;
+	}
+	
+	/**
+	 * Binds the whole table of context-wide initialization parameters
+	 * to the given page context variable, so that any of them can be
+	 * read later using the standard <code>${variable['name']}</code>
+	 * syntax without invoking another tag.
+	 * @param var
+	 */
+	protected final void bindParameters(final String var) {
+		getPageContext().setAttribute(var, getParameters());
+	}
+	
+	private static final Map<String, String> snapshot(
+		final ServletContext context) {
+		final Map<String, String> parameters = new HashMap<String, String>();
+		final Enumeration<String> names = context.getInitParameterNames();
+		while(names.hasMoreElements()) {
+			final String name = names.nextElement();
+			parameters.put(name, context.getInitParameter(name));
+		}
+		return Collections.unmodifiableMap(parameters);
 	}
 
-}
\ No newline at end of file
+}
@@ -27,6 +27,7 @@
 package com.kolich.spring.tags.util;
 
 import com.kolich.spring.tags.ContextAwareTag;
+import com.kolich.spring.util.CachedClock;
 
 public final class Epoch extends ContextAwareTag {
 
@@ -34,7 +35,7 @@ public final class Epoch extends ContextAwareTag {
 
 	@Override
 	protected int myDoStartTag() throws Exception {
-		writeOrBind(Long.toString(System.currentTimeMillis()));
+		writeOrBind(CachedClock.getMillisString());
 		return SKIP_BODY;
 	}
 	
@@ -0,0 +1,229 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * A coarse grained, shared clock.  Declare one of these as a bean and a
+ * daemon thread ticks every {@link #setResolution(long)} milliseconds
+ * (10 by default) and publishes the current time, along with its decimal
+ * string form and its RFC 1123 HTTP-date form, so hot paths that only
+ * need "about now" read a volatile field instead of calling
+ * {@link System#currentTimeMillis()} and formatting it themselves.  The
+ * ticker is started with the bean and stopped when its context goes
+ * away; while no bean is ticking, the clock falls back to reading the
+ * system time.
+ */
+public final class CachedClock implements InitializingBean, DisposableBean {
+	
+	private static final long DEFAULT_RESOLUTION_MS = 10L;
+	
+	private static final String HTTP_DATE_FORMAT =
+		"EEE, dd MMM yyyy HH:mm:ss zzz";
+	
+	private static final ThreadLocal<DateFormat> httpDateFormat__ =
+		new ThreadLocal<DateFormat>() {
+			@Override
+			protected DateFormat initialValue() {
+				final DateFormat format = new SimpleDateFormat(
+					HTTP_DATE_FORMAT, Locale.US);
+				format.setTimeZone(TimeZone.getTimeZone("GMT"));
+				return format;
+			}
+		};
+	
+	/**
+	 * One tick of the clock.  The HTTP-date only has second resolution,
+	 * so it is carried over from the previous tick within the same second.
+	 */
+	private static final class Tick {
+		
+		private final long millis_;
+		private final long second_;
+		private final String millisString_;
+		private final String httpDate_;
+		
+		private Tick(final long millis, final Tick previous) {
+			millis_ = millis;
+			second_ = millis / 1000L;
+			millisString_ = Long.toString(millis);
+			httpDate_ = (previous != null && previous.second_ == second_) ?
+				previous.httpDate_ : httpDateFormat__.get().format(millis);
+		}
+		
+	}
+	
+	private static volatile Tick tick__ =
+		new Tick(System.currentTimeMillis(), null);
+	
+	/**
+	 * How many beans are ticking right now.  Beans in more than one
+	 * context may share this class; each one only ever stops its own
+	 * ticker.
+	 */
+	private static final AtomicInteger running__ = new AtomicInteger(0);
+	
+	/**
+	 * The last HTTP-date formatted for an arbitrary time, see
+	 * {@link #formatHttpDate(long)}.
+	 */
+	private static volatile Tick lastFormatted__ = tick__;
+	
+	private long resolution_ = DEFAULT_RESOLUTION_MS;
+	
+	/**
+	 * The ticker this bean started, or null if it is not ticking.
+	 */
+	private ScheduledExecutorService ticker_ = null;
+	private ScheduledFuture<?> schedule_ = null;
+	
+	@Override
+	public synchronized void afterPropertiesSet() throws Exception {
+		if(ticker_ != null) {
+			return;
+		}
+		ticker_ = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable r) {
+					final Thread t = new Thread(r, "kolich-cached-clock");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		// Whatever tick is left over from an earlier ticker is stale.
+		tick__ = new Tick(System.currentTimeMillis(), null);
+		schedule();
+		running__.incrementAndGet();
+	}
+	
+	@Override
+	public synchronized void destroy() throws Exception {
+		if(ticker_ == null) {
+			return;
+		}
+		running__.decrementAndGet();
+		ticker_.shutdownNow();
+		ticker_ = null;
+		schedule_ = null;
+	}
+	
+	private void schedule() {
+		if(schedule_ != null) {
+			schedule_.cancel(false);
+		}
+		schedule_ = ticker_.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				tick__ = new Tick(System.currentTimeMillis(), tick__);
+			}
+		}, 0L, resolution_, MILLISECONDS);
+	}
+	
+	/**
+	 * The current tick, or null if no bean is ticking, in which case
+	 * callers read the system time and only do the work they need.
+	 */
+	private static final Tick tick() {
+		return (running__.get() > 0) ? tick__ : null;
+	}
+	
+	/**
+	 * The current time in milliseconds since the epoch, give or take the
+	 * resolution of the clock.
+	 */
+	public static final long getMillis() {
+		final Tick tick;
+		return ((tick = tick()) != null) ? tick.millis_ :
+			System.currentTimeMillis();
+	}
+	
+	/**
+	 * {@link #getMillis()} as a decimal string.
+	 */
+	public static final String getMillisString() {
+		final Tick tick;
+		return ((tick = tick()) != null) ? tick.millisString_ :
+			Long.toString(System.currentTimeMillis());
+	}
+	
+	/**
+	 * {@link #getMillis()} as an RFC 1123 HTTP-date, for Date, Expires
+	 * and Last-Modified headers.
+	 */
+	public static final String getHttpDate() {
+		final Tick tick;
+		return ((tick = tick()) != null) ? tick.httpDate_ :
+			formatHttpDate(System.currentTimeMillis());
+	}
+	
+	/**
+	 * Formats the given time as an RFC 1123 HTTP-date.  Times within the
+	 * current second, or the same second as the previous call, which is
+	 * what fixed Expires dates look like, are not formatted again.
+	 */
+	public static final String formatHttpDate(final long millis) {
+		final long second = millis / 1000L;
+		final Tick now = tick(), last = lastFormatted__;
+		if(now != null && now.second_ == second) {
+			return now.httpDate_;
+		} else if(last.second_ == second) {
+			return last.httpDate_;
+		}
+		final Tick formatted = new Tick(millis, null);
+		lastFormatted__ = formatted;
+		return formatted.httpDate_;
+	}
+	
+	/**
+	 * How often the clock ticks, in milliseconds.
+	 */
+	public synchronized void setResolution(long resolution) {
+		checkArgument(resolution > 0L, "Clock resolution must be " +
+			"greater than zero.");
+		resolution_ = resolution;
+		if(ticker_ != null) {
+			schedule();
+		}
+	}
+	
+}
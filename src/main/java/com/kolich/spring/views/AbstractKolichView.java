@@ -26,20 +26,38 @@
 
 package com.kolich.spring.views;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.net.HttpHeaders.ACCEPT_ENCODING;
 import static com.google.common.net.HttpHeaders.CACHE_CONTROL;
+import static com.google.common.net.HttpHeaders.CONTENT_ENCODING;
+import static com.google.common.net.HttpHeaders.CONTENT_LENGTH;
+import static com.google.common.net.HttpHeaders.ETAG;
 import static com.google.common.net.HttpHeaders.EXPIRES;
+import static com.google.common.net.HttpHeaders.LAST_MODIFIED;
 import static com.google.common.net.HttpHeaders.PRAGMA;
+import static com.google.common.net.HttpHeaders.VARY;
+import static javax.servlet.http.HttpServletResponse.SC_NOT_MODIFIED;
 
+import java.io.IOException;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
+import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.servlet.view.AbstractView;
 
+import com.kolich.common.entities.KolichCommonEntity;
+import com.kolich.spring.util.CachedClock;
+import com.kolich.spring.views.RenderCache.RenderedEntity;
+
 public abstract class AbstractKolichView extends AbstractView {
 	
 	private static final Logger logger__ = 
@@ -50,6 +68,56 @@ public abstract class AbstractKolichView extends AbstractView {
 	private static final String PRAGMA_NO_CACHE = "no-cache";
 	private static final String CACHE_CONTROL_NO_CACHE =
 		"no-store, no-cache, must-revalidate, post-check=0, pre-check=0";
+	
+	/**
+	 * Request attribute holding the {@link RenderState} of the render in
+	 * progress, so that {@link #renderEntity} can pick up what was
+	 * already worked out for the validators.  Only set for the duration
+	 * of a render; a nested render on the same request (a forward, an
+	 * include or an error view) gets its own, and puts back the outer
+	 * one when it's done.
+	 */
+	private static final String RENDER_STATE_ATTRIBUTE =
+		AbstractKolichView.class.getName() + ".RENDER_STATE";
+	
+	private static final int DEFAULT_ASYNC_RENDERING_THRESHOLD = 64 * 1024;
+	private static final int DEFAULT_ASYNC_CHUNK_SIZE = 8 * 1024;
+	
+	/**
+	 * If true, serialized entities larger than the async rendering
+	 * threshold are written to the client using the Servlet 3.1
+	 * non-blocking I/O API, so the request thread is released while the
+	 * socket drains.  Requests (or filter chains) that do not support
+	 * async are always rendered synchronously.
+	 */
+	private boolean asyncRendering_ = false;
+	private int asyncRenderingThreshold_ = DEFAULT_ASYNC_RENDERING_THRESHOLD;
+	private int asyncChunkSize_ = DEFAULT_ASYNC_CHUNK_SIZE;
+	
+	/**
+	 * The async timeout, in milliseconds, of an asynchronous render.
+	 * Zero means no timeout; negative leaves the container default
+	 * alone, which may be too short for large bodies and slow clients.
+	 */
+	private long asyncTimeout_ = -1L;
+	
+	/**
+	 * The gzip/deflate content-encoding stage, disabled by default.
+	 */
+	private final CompressionStage compression_ = new CompressionStage();
+	
+	/**
+	 * If true, payloads that do not supply their own ETag (and are not
+	 * streamed) get a strong ETag generated from a hash of the entity
+	 * bytes.  This saves bandwidth, but not the serialization work.
+	 */
+	private boolean generateETags_ = false;
+	
+	/**
+	 * Opt-in cache of rendered entities, for payloads that declare a
+	 * cache key.  Null when disabled.
+	 */
+	private RenderCache renderCache_ = null;
 					
 	public AbstractKolichView(String contentType) {
 		setContentType(contentType);
@@ -68,16 +136,21 @@ public abstract class AbstractKolichView extends AbstractView {
 		final HttpServletRequest request,
 		final HttpServletResponse response)
 		throws Exception {
+		final Object outer = request.getAttribute(RENDER_STATE_ATTRIBUTE);
 		try {
 			final KolichViewSerializable payload =
 				(KolichViewSerializable)model.get(VIEW_PAYLOAD);
+			final RenderState state = new RenderState(payload);
+			request.setAttribute(RENDER_STATE_ATTRIBUTE, state);
 			// If the payload has an Expires date attached to it, then
 			// we should honor that by adding the Expires: header to the
 			// response.  Controllers may set this so that upstream caches
-			// do not attempt to cache the resource.
+			// do not attempt to cache the resource.  The date is formatted
+			// by the cached clock, which remembers the last one it did.
 			final Date expires;
 			if((expires = payload.getExpires()) != null) {
-				response.addDateHeader(EXPIRES, expires.getTime());
+				response.addHeader(EXPIRES,
+					CachedClock.formatHttpDate(expires.getTime()));
 			}
 			// If we are asked to disable caching of this response,
 			// then we need to append the correct Cache-Control and Pragma
@@ -86,6 +159,39 @@ public abstract class AbstractKolichView extends AbstractView {
 				response.addHeader(PRAGMA, PRAGMA_NO_CACHE);
 	    		response.addHeader(CACHE_CONTROL, CACHE_CONTROL_NO_CACHE);
 			}
+			// A response that could be compressed varies on
+			// Accept-Encoding regardless of whether this particular one
+			// ends up compressed, a 304 included.
+			final boolean compressible =
+				compression_.isCompressible(getContentType());
+			if(compressible) {
+				response.addHeader(VARY, ACCEPT_ENCODING);
+			}
+			final String etag = getETag(state);
+			final Date lastModified;
+			if((lastModified = payload.getLastModified()) != null) {
+				response.setDateHeader(LAST_MODIFIED, lastModified.getTime());
+			}
+			// If the client already has this version of the entity, tell
+			// it so and skip all of the rendering work.  Any coding of
+			// the entity matches, so there's no need to negotiate one.
+			if(ConditionalRequests.isNotModified(request, etag,
+				lastModified)) {
+				if(etag != null) {
+					response.setHeader(ETAG,
+						ConditionalRequests.getNotModifiedETag(request, etag));
+				}
+				response.setStatus(SC_NOT_MODIFIED);
+				return;
+			}
+			final ContentEncoding encoding = (compressible) ?
+				negotiateEncoding(state, request) : null;
+			state.encoding_ = encoding;
+			if(etag != null) {
+				// The encoded representation needs its own strong tag.
+				response.setHeader(ETAG, (encoding != null) ?
+					ConditionalRequests.withEncoding(etag, encoding) : etag);
+			}
 			// Call the custom prepare response after anything else has
 	    	// been set so that the view can override these if necessary.
 			myPrepareResponse(payload, request, response);
@@ -93,7 +199,58 @@ public abstract class AbstractKolichView extends AbstractView {
 		} catch(Exception e) {
 			logger__.error("Failed to render merged output model.", e);
 			throw e;
+		} finally {
+			if(outer != null) {
+				request.setAttribute(RENDER_STATE_ATTRIBUTE, outer);
+			} else {
+				request.removeAttribute(RENDER_STATE_ATTRIBUTE);
+			}
+		}
+	}
+	
+	/**
+	 * Negotiates the content coding the entity of the payload will
+	 * actually be sent with, or returns null if it will be sent as is.
+	 */
+	private final ContentEncoding negotiateEncoding(final RenderState state,
+		final HttpServletRequest request) throws Exception {
+		final KolichViewSerializable payload = state.payload_;
+		final ContentEncoding encoding;
+		if((encoding = compression_.negotiate(request)) == null ||
+			payload.isStreaming()) {
+			// Streamed entities are always encoded when asked to be.
+			return encoding;
+		}
+		final RenderedEntity rendered;
+		if((rendered = getRenderedEntity(state)) != null) {
+			return (rendered.getEncoded(encoding) != null) ? encoding : null;
+		}
+		if(payload.isImmutable() && compression_.getPrecompressed(encoding,
+			payload.getEntity()) != null) {
+			return encoding;
 		}
+		return compression_.isWorthCompressing(
+			getSerializedEntity(state).length) ? encoding : null;
+	}
+	
+	/**
+	 * Returns the (quoted) ETag of the unencoded entity of the payload,
+	 * or null if it has none.  Only serializes the entity if the payload
+	 * does not supply its own and ETags are generated.
+	 */
+	private final String getETag(final RenderState state) throws Exception {
+		final KolichViewSerializable payload = state.payload_;
+		final String etag;
+		if((etag = payload.getETag()) != null) {
+			return ConditionalRequests.quote(etag);
+		} else if(!generateETags_ || payload.isStreaming()) {
+			return null;
+		}
+		final RenderedEntity rendered;
+		if((rendered = getRenderedEntity(state)) != null) {
+			return rendered.getETag();
+		}
+		return ConditionalRequests.generateETag(getSerializedEntity(state));
 	}
 	
 	public void myPrepareResponse(final KolichViewSerializable payload,
@@ -107,5 +264,285 @@ public abstract class AbstractKolichView extends AbstractView {
 		// Optional override.
 	}
 	
+	/**
+	 * Writes the entity of the given payload to the response output
+	 * stream, then quietly closes it.  Payloads that support streaming are
+	 * written straight to the output stream, so the only buffering is
+	 * the container's own fixed size response buffer.  Everything else
+	 * falls back to the fully serialized entity from
+	 * {@link KolichViewSerializable#getEntity()}, which may be written
+	 * asynchronously if async rendering is enabled.
+	 * @param setContentLength if true, a Content-Length header is sent
+	 * when the length of the entity is known up front
+	 */
+	protected final void renderEntity(final KolichViewSerializable payload,
+		final HttpServletRequest request, final HttpServletResponse response,
+		final boolean setContentLength) throws Exception {
+		// Negotiated, and the Vary header added, up front; unless this
+		// isn't the payload being rendered, in which case it's sent as is.
+		RenderState state = (RenderState)request.getAttribute(
+			RENDER_STATE_ATTRIBUTE);
+		if(state == null || state.payload_ != payload) {
+			state = new RenderState(payload);
+		}
+		ContentEncoding encoding = state.encoding_;
+		final RenderedEntity rendered = getRenderedEntity(state);
+		if(payload.isStreaming()) {
+			final ServletOutputStream os = response.getOutputStream();
+			try {
+				if(encoding != null) {
+					// Length of the encoded entity is never known up front.
+					setContentEncoding(response, encoding);
+					compression_.write(encoding, os, payload);
+				} else {
+					final long length;
+					if(setContentLength && (length = payload.getContentLength()) >= 0L) {
+						setContentLength(response, length);
+					}
+					payload.writeEntity(os);
+				}
+			} finally {
+				// Quietly close the output stream.
+				IOUtils.closeQuietly(os);
+			}
+		} else if(rendered != null) {
+			// Already rendered, and possibly already encoded, bytes
+			// straight out of the render cache.
+			byte[] bytes = null;
+			if(encoding != null && (bytes = rendered.getEncoded(encoding)) != null) {
+				setContentEncoding(response, encoding);
+			} else {
+				bytes = rendered.getIdentity();
+			}
+			if(setContentLength) {
+				response.setContentLength(bytes.length);
+			}
+			renderBytes(bytes, request, response);
+		} else {
+			final KolichCommonEntity entity = payload.getEntity();
+			byte[] bytes = null;
+			if(encoding != null && payload.isImmutable()) {
+				bytes = compression_.getPrecompressed(encoding, entity);
+			}
+			if(bytes == null) {
+				// Use the bytes we already serialized, if any.
+				if((bytes = state.serialized_) == null) {
+					bytes = entity.getBytes();
+				}
+				if(encoding != null && compression_.isWorthCompressing(bytes.length)) {
+					bytes = compression_.compress(encoding, entity,
+						payload.isImmutable(), bytes);
+				} else {
+					encoding = null;
+				}
+			}
+			if(encoding != null) {
+				setContentEncoding(response, encoding);
+			}
+			if(setContentLength) {
+				response.setContentLength(bytes.length);
+			}
+			renderBytes(bytes, request, response);
+		}
+	}
+	
+	/**
+	 * Returns the rendered entity of the payload from the render cache,
+	 * rendering it if needed, or null if the payload can't be cached.
+	 * Only goes to the cache once per render.
+	 */
+	private final RenderedEntity getRenderedEntity(final RenderState state)
+		throws Exception {
+		final KolichViewSerializable payload = state.payload_;
+		final String key;
+		if(renderCache_ == null || payload.isStreaming() ||
+			(key = payload.getCacheKey()) == null) {
+			return null;
+		}
+		if(state.rendered_ == null) {
+			state.rendered_ = renderCache_.get(key,
+				new Callable<RenderedEntity>() {
+					@Override
+					public RenderedEntity call() throws Exception {
+						return render(payload);
+					}
+				});
+		}
+		return state.rendered_;
+	}
+	
+	/**
+	 * Returns the serialized entity of the payload, serializing it only
+	 * once per render.
+	 */
+	private final byte[] getSerializedEntity(final RenderState state)
+		throws Exception {
+		if(state.serialized_ == null) {
+			state.serialized_ = state.payload_.getEntity().getBytes();
+		}
+		return state.serialized_;
+	}
+	
+	/**
+	 * Serializes the entity of the given payload, along with every
+	 * encoded variant of it that this view could send, for the render
+	 * cache.
+	 */
+	private final RenderedEntity render(final KolichViewSerializable payload)
+		throws Exception {
+		final byte[] bytes = payload.getEntity().getBytes();
+		final Map<ContentEncoding, byte[]> encoded =
+			new EnumMap<ContentEncoding, byte[]>(ContentEncoding.class);
+		if(compression_.isCompressible(getContentType()) &&
+			compression_.isWorthCompressing(bytes.length)) {
+			for(final ContentEncoding encoding : ContentEncoding.values()) {
+				encoded.put(encoding, compression_.compress(encoding, bytes));
+			}
+		}
+		return new RenderedEntity(bytes, encoded, (generateETags_) ?
+			ConditionalRequests.generateETag(bytes) : null,
+			payload.getCacheTtl());
+	}
+	
+	private final void renderBytes(final byte[] bytes,
+		final HttpServletRequest request, final HttpServletResponse response)
+		throws IOException {
+		if(asyncRendering_ && bytes.length >= asyncRenderingThreshold_ &&
+			request.isAsyncSupported()) {
+			// Hands the write off to the container; the output stream is
+			// left open and the async context is completed once the last
+			// chunk has been written.
+			AsyncEntityWriter.start(request, response, bytes,
+				asyncChunkSize_, asyncTimeout_);
+		} else {
+			final ServletOutputStream os = response.getOutputStream();
+			try {
+				os.write(bytes);
+			} finally {
+				// Quietly close the output stream.
+				IOUtils.closeQuietly(os);
+			}
+		}
+	}
+	
+	private static final void setContentEncoding(
+		final HttpServletResponse response, final ContentEncoding encoding) {
+		// The ETag of the encoded representation was set up front.
+		response.setHeader(CONTENT_ENCODING, encoding.getToken());
+	}
+	
+	private static final void setContentLength(
+		final HttpServletResponse response, final long length) {
+		if(length <= Integer.MAX_VALUE) {
+			response.setContentLength((int)length);
+		} else {
+			// Not using setContentLengthLong() here; it's Servlet 3.1
+			// only and synchronous rendering should still work on 3.0.
+			response.setHeader(CONTENT_LENGTH, Long.toString(length));
+		}
+	}
+	
+	/**
+	 * Turns on the gzip/deflate content-encoding stage for responses of
+	 * this view, if its content type is on the compressible MIME
+	 * allowlist.
+	 */
+	public void setCompression(boolean compression) {
+		compression_.setEnabled(compression);
+	}
+	
+	/**
+	 * Fully serialized entities smaller than this, in bytes, are never
+	 * compressed.
+	 */
+	public void setCompressionMinSize(int compressionMinSize) {
+		compression_.setMinSize(compressionMinSize);
+	}
+	
+	public void setCompressionLevel(int compressionLevel) {
+		compression_.setLevel(compressionLevel);
+	}
+	
+	public void setCompressibleMimeTypes(List<String> compressibleMimeTypes) {
+		compression_.setMimeTypes(compressibleMimeTypes);
+	}
+	
+	/**
+	 * Maximum total size, in bytes, of the compressed entities kept
+	 * around (per coding) for payloads that report themselves as
+	 * immutable.  Zero, the default, disables it.
+	 */
+	public void setPrecompressedCacheSize(long precompressedCacheSize) {
+		compression_.setPrecompressedCacheSize(precompressedCacheSize);
+	}
+	
+	public void setGenerateETags(boolean generateETags) {
+		generateETags_ = generateETags;
+	}
+	
+	/**
+	 * Enables the render cache of this view, bounded to the given total
+	 * size in bytes of all cached entities and their encoded variants.
+	 * Only payloads that declare a cache key are ever cached.  Zero, the
+	 * default, disables it.
+	 */
+	public void setRenderCacheSize(long renderCacheSize) {
+		renderCache_ = (renderCacheSize > 0L) ?
+			new RenderCache(renderCacheSize) : null;
+	}
+	
+	/**
+	 * Drops the rendered entity cached under the given key, if any.
+	 */
+	public void invalidateRenderCache(final String key) {
+		if(renderCache_ != null) {
+			renderCache_.invalidate(key);
+		}
+	}
+	
+	public void invalidateRenderCache() {
+		if(renderCache_ != null) {
+			renderCache_.invalidateAll();
+		}
+	}
+	
+	public void setAsyncRendering(boolean asyncRendering) {
+		asyncRendering_ = asyncRendering;
+	}
+	
+	public void setAsyncRenderingThreshold(int asyncRenderingThreshold) {
+		asyncRenderingThreshold_ = asyncRenderingThreshold;
+	}
+	
+	public void setAsyncChunkSize(int asyncChunkSize) {
+		checkArgument(asyncChunkSize > 0, "Async chunk size must be " +
+			"greater than zero.");
+		asyncChunkSize_ = asyncChunkSize;
+	}
+	
+	public void setAsyncTimeout(long asyncTimeout) {
+		asyncTimeout_ = asyncTimeout;
+	}
+	
+	/**
+	 * What one render of one payload worked out so far, so that none of
+	 * it is done twice: the serialized entity, if it had to be produced
+	 * early to generate an ETag or to negotiate the content coding, the
+	 * entity from the render cache and the negotiated content coding.
+	 */
+	private static final class RenderState {
+		
+		private final KolichViewSerializable payload_;
+		
+		private byte[] serialized_ = null;
+		private RenderedEntity rendered_ = null;
+		private ContentEncoding encoding_ = null;
+		
+		private RenderState(final KolichViewSerializable payload) {
+			payload_ = payload;
+		}
+		
+	}
+	
 		
 }
@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.views;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pushes a fully serialized entity to the client in chunks using the
+ * Servlet 3.1 non-blocking I/O API.  The request thread that started
+ * the write is released as soon as the {@link WriteListener} is
+ * registered; the container calls back into
+ * {@link #onWritePossible()} whenever the socket can take more data,
+ * so a slow client never ties up a container thread while it drains.
+ * A client too slow to take the whole entity before the async timeout,
+ * or one that goes away, gets its async context completed all the same.
+ * 
+ * @author Mark Kolich
+ *
+ */
+final class AsyncEntityWriter implements WriteListener, AsyncListener {
+	
+	private static final Logger logger__ = 
+		LoggerFactory.getLogger(AsyncEntityWriter.class);
+	
+	private final AsyncContext context_;
+	private final ServletOutputStream os_;
+	private final byte[] entity_;
+	private final int chunkSize_;
+	
+	/**
+	 * Only ever touched from container callbacks, which the container
+	 * guarantees are never invoked concurrently for the same listener.
+	 */
+	private int offset_ = 0;
+	
+	/**
+	 * Write and async callbacks may come in on different threads, and
+	 * the async context must only ever be completed once.
+	 */
+	private final AtomicBoolean completed_ = new AtomicBoolean(false);
+	
+	private AsyncEntityWriter(final AsyncContext context,
+		final ServletOutputStream os, final byte[] entity,
+		final int chunkSize) {
+		context_ = context;
+		os_ = os;
+		entity_ = entity;
+		chunkSize_ = chunkSize;
+	}
+	
+	/**
+	 * Puts the given request into asynchronous mode and registers a
+	 * listener that writes the entity to the response as the client
+	 * can accept it.  Returns immediately.
+	 * @param timeout the async timeout in milliseconds, zero for no
+	 * timeout or negative to leave the container default alone
+	 */
+	public static final void start(final HttpServletRequest request,
+		final HttpServletResponse response, final byte[] entity,
+		final int chunkSize, final long timeout) throws IOException {
+		// Pass the request and response through so any filter wrappers
+		// stay in place for the rest of the write.
+		final AsyncContext context = request.startAsync(request, response);
+		if(timeout >= 0L) {
+			context.setTimeout(timeout);
+		}
+		final ServletOutputStream os = response.getOutputStream();
+		final AsyncEntityWriter writer = new AsyncEntityWriter(context, os,
+			entity, chunkSize);
+		context.addListener(writer);
+		os.setWriteListener(writer);
+	}
+
+	@Override
+	public void onWritePossible() throws IOException {
+		while(os_.isReady()) {
+			final int remaining = entity_.length - offset_;
+			if(remaining <= 0) {
+				// All done; let the container flush whatever is left
+				// and finish the response.
+				complete();
+				return;
+			}
+			final int length = Math.min(chunkSize_, remaining);
+			os_.write(entity_, offset_, length);
+			offset_ += length;
+		}
+		// Not ready, the container will call us back once the
+		// client has drained enough of what we've written so far.
+	}
+
+	@Override
+	public void onError(final Throwable t) {
+		logger__.debug("Failed to asynchronously write entity (wrote " +
+			offset_ + " of " + entity_.length + " bytes).", t);
+		complete();
+	}
+	
+	@Override
+	public void onTimeout(final AsyncEvent event) {
+		logger__.debug("Timed out asynchronously writing entity (wrote " +
+			offset_ + " of " + entity_.length + " bytes).");
+		complete();
+	}
+	
+	@Override
+	public void onError(final AsyncEvent event) {
+		onError(event.getThrowable());
+	}
+	
+	@Override
+	public void onComplete(final AsyncEvent event) {
+		completed_.set(true);
+	}
+	
+	@Override
+	public void onStartAsync(final AsyncEvent event) {
+		// Nothing to do.
+	}
+	
+	private void complete() {
+		if(completed_.compareAndSet(false, true)) {
+			context_.complete();
+		}
+	}
+	
+}
@@ -0,0 +1,240 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.views;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.net.HttpHeaders.ACCEPT_ENCODING;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.kolich.common.entities.KolichCommonEntity;
+
+/**
+ * The on-the-fly gzip/deflate content-encoding stage of the
+ * {@link AbstractKolichView} pipeline.  Only responses whose content type
+ * is on the MIME allowlist are ever compressed (images, like PNG's, are
+ * already compressed and are skipped by default), and fully serialized
+ * entities smaller than the minimum size are sent as-is.  Deflaters come
+ * from a pool rather than being created for every response.
+ * 
+ * @author Mark Kolich
+ *
+ */
+final class CompressionStage {
+	
+	private static final int DEFAULT_MIN_SIZE = 1024;
+	private static final int DEFAULT_MAX_IDLE_DEFLATERS = 32;
+	
+	private static final Set<String> DEFAULT_MIME_TYPES =
+		Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+			"text/html", "text/plain", "text/css", "text/xml",
+			"text/javascript", "application/json", "application/javascript",
+			"application/xml")));
+	
+	private static final char MIME_PARAM_SEPARATOR = ';';
+	
+	private boolean enabled_ = false;
+	private int minSize_ = DEFAULT_MIN_SIZE;
+	private Set<String> mimeTypes_ = DEFAULT_MIME_TYPES;
+	
+	private Map<ContentEncoding, DeflaterPool> pools_ =
+		newPools(Deflater.DEFAULT_COMPRESSION);
+	
+	/**
+	 * Compressed bytes of immutable entities, keyed by entity identity
+	 * and bounded by total size in bytes.  Null when disabled.
+	 */
+	private Map<ContentEncoding, Cache<KolichCommonEntity, byte[]>> precompressed_ = null;
+	
+	public boolean isEnabled() {
+		return enabled_;
+	}
+	
+	/**
+	 * Returns true if responses of the given content type may be
+	 * compressed, and therefore vary on Accept-Encoding.
+	 */
+	public boolean isCompressible(final String contentType) {
+		if(!enabled_ || contentType == null) {
+			return false;
+		}
+		final int params = contentType.indexOf(MIME_PARAM_SEPARATOR);
+		return mimeTypes_.contains(((params < 0) ? contentType :
+			contentType.substring(0, params)).trim().toLowerCase(Locale.US));
+	}
+	
+	public ContentEncoding negotiate(final HttpServletRequest request) {
+		return ContentEncoding.negotiate(request.getHeader(ACCEPT_ENCODING));
+	}
+	
+	/**
+	 * True if a fully serialized entity of the given length is worth
+	 * compressing at all.
+	 */
+	public boolean isWorthCompressing(final int length) {
+		return length >= minSize_;
+	}
+	
+	/**
+	 * Returns the cached, already compressed, bytes of the given immutable
+	 * entity or null if there are none.
+	 */
+	public byte[] getPrecompressed(final ContentEncoding encoding,
+		final KolichCommonEntity entity) {
+		return (precompressed_ != null) ?
+			precompressed_.get(encoding).getIfPresent(entity) : null;
+	}
+	
+	/**
+	 * Compresses the given serialized entity with the given coding.  If
+	 * the entity is immutable, and the precompressed cache is enabled,
+	 * the compressed bytes are cached and reused for as long as the
+	 * entity instance itself is alive.
+	 */
+	public byte[] compress(final ContentEncoding encoding,
+		final KolichCommonEntity entity, final boolean immutable,
+		final byte[] bytes) throws IOException {
+		final byte[] compressed = compress(encoding, bytes);
+		if(immutable && precompressed_ != null) {
+			precompressed_.get(encoding).put(entity, compressed);
+		}
+		return compressed;
+	}
+	
+	public byte[] compress(final ContentEncoding encoding, final byte[] bytes)
+		throws IOException {
+		// Deflated text is usually well under half the size of the input.
+		final ByteArrayOutputStream os =
+			new ByteArrayOutputStream((bytes.length / 2) + 64);
+		final DeflaterPool pool = pools_.get(encoding);
+		final Deflater deflater = pool.borrow();
+		try {
+			final DeflaterOutputStream dos = encoding.wrap(os, deflater);
+			dos.write(bytes);
+			dos.finish();
+		} finally {
+			pool.release(deflater);
+		}
+		return os.toByteArray();
+	}
+	
+	/**
+	 * Streams the entity of the given payload to the given stream,
+	 * encoded with the given coding.  Does not close the stream.
+	 */
+	public void write(final ContentEncoding encoding, final OutputStream os,
+		final KolichViewSerializable payload) throws Exception {
+		final DeflaterPool pool = pools_.get(encoding);
+		final Deflater deflater = pool.borrow();
+		try {
+			final DeflaterOutputStream dos = encoding.wrap(os, deflater);
+			payload.writeEntity(dos);
+			dos.finish();
+		} finally {
+			pool.release(deflater);
+		}
+	}
+	
+	public void setEnabled(final boolean enabled) {
+		enabled_ = enabled;
+	}
+	
+	public void setMinSize(final int minSize) {
+		minSize_ = minSize;
+	}
+	
+	public void setMimeTypes(final Collection<String> mimeTypes) {
+		checkNotNull(mimeTypes, "MIME types cannot be null.");
+		final Set<String> types = new HashSet<String>();
+		for(final String type : mimeTypes) {
+			types.add(type.trim().toLowerCase(Locale.US));
+		}
+		mimeTypes_ = Collections.unmodifiableSet(types);
+	}
+	
+	public void setLevel(final int level) {
+		pools_ = newPools(level);
+	}
+	
+	/**
+	 * Sets the maximum total size, in bytes, of the precompressed
+	 * entity cache of each coding.  Zero disables it.
+	 */
+	public void setPrecompressedCacheSize(final long maxBytes) {
+		if(maxBytes <= 0L) {
+			precompressed_ = null;
+			return;
+		}
+		final Map<ContentEncoding, Cache<KolichCommonEntity, byte[]>> caches =
+			new EnumMap<ContentEncoding, Cache<KolichCommonEntity, byte[]>>(
+				ContentEncoding.class);
+		for(final ContentEncoding encoding : ContentEncoding.values()) {
+			caches.put(encoding, CacheBuilder.newBuilder()
+				// Weak keys means identity, not equals(), comparison; and
+				// an entry goes away with its entity.
+				.weakKeys()
+				.maximumWeight(maxBytes)
+				.weigher(new Weigher<KolichCommonEntity, byte[]>() {
+					@Override
+					public int weigh(final KolichCommonEntity key,
+						final byte[] value) {
+						return value.length;
+					}
+				}).<KolichCommonEntity, byte[]>build());
+		}
+		precompressed_ = caches;
+	}
+	
+	private static final Map<ContentEncoding, DeflaterPool> newPools(
+		final int level) {
+		final Map<ContentEncoding, DeflaterPool> pools =
+			new EnumMap<ContentEncoding, DeflaterPool>(ContentEncoding.class);
+		for(final ContentEncoding encoding : ContentEncoding.values()) {
+			pools.put(encoding, new DeflaterPool(level, encoding.isNowrap(),
+				DEFAULT_MAX_IDLE_DEFLATERS));
+		}
+		return pools;
+	}
+	
+}
@@ -0,0 +1,204 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.views;
+
+import static com.google.common.net.HttpHeaders.IF_MODIFIED_SINCE;
+import static com.google.common.net.HttpHeaders.IF_NONE_MATCH;
+
+import java.util.Date;
+
+import javax.servlet.http.HttpServletRequest;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Helpers for generating entity validators and evaluating the
+ * If-None-Match and If-Modified-Since preconditions of a request
+ * against them.
+ * 
+ * @author Mark Kolich
+ *
+ */
+final class ConditionalRequests {
+	
+	private static final String METHOD_GET = "GET";
+	private static final String METHOD_HEAD = "HEAD";
+	
+	private static final String WEAK_PREFIX = "W/";
+	private static final String ANY_ETAG = "*";
+	private static final char QUOTE = '"';
+	private static final char ETAG_SEPARATOR = ',';
+	private static final char ENCODING_SUFFIX_SEPARATOR = '-';
+	
+	/**
+	 * Fast, non-cryptographic; we only need to tell versions of the
+	 * same resource apart.
+	 */
+	private static final HashFunction etagHash__ = Hashing.murmur3_128();
+	
+	// Cannot instantiate.
+	private ConditionalRequests() {}
+	
+	/**
+	 * Builds a strong, quoted, entity tag from a hash of the given bytes.
+	 */
+	public static final String generateETag(final byte[] entity) {
+		return quote(etagHash__.hashBytes(entity).toString());
+	}
+	
+	/**
+	 * Quotes the given opaque tag, unless it already is.
+	 */
+	public static final String quote(final String tag) {
+		if(tag.length() > 1 && tag.charAt(tag.length() - 1) == QUOTE &&
+			(tag.charAt(0) == QUOTE || tag.startsWith(WEAK_PREFIX))) {
+			return tag;
+		}
+		return QUOTE + tag + QUOTE;
+	}
+	
+	/**
+	 * Returns the entity tag of the given content coding of the entity
+	 * with the given (quoted) tag.  Different representations of the
+	 * same entity must not share a strong entity tag.
+	 */
+	public static final String withEncoding(final String etag,
+		final ContentEncoding encoding) {
+		return etag.substring(0, etag.length() - 1) +
+			ENCODING_SUFFIX_SEPARATOR + encoding.getToken() + QUOTE;
+	}
+	
+	/**
+	 * Returns true if the request is a GET or HEAD whose preconditions
+	 * say the client's cached copy of the entity with the given validators
+	 * is still good, and a 304 Not Modified should be sent instead.  An
+	 * If-None-Match header, when present, always takes precedence over
+	 * If-Modified-Since.
+	 */
+	public static final boolean isNotModified(final HttpServletRequest request,
+		final String etag, final Date lastModified) {
+		final String method = request.getMethod();
+		if(!METHOD_GET.equals(method) && !METHOD_HEAD.equals(method)) {
+			return false;
+		}
+		final String ifNoneMatch = request.getHeader(IF_NONE_MATCH);
+		if(ifNoneMatch != null) {
+			return etag != null && match(ifNoneMatch, etag) != null;
+		}
+		if(lastModified != null) {
+			final long ifModifiedSince;
+			try {
+				ifModifiedSince = request.getDateHeader(IF_MODIFIED_SINCE);
+			} catch (IllegalArgumentException e) {
+				// Unparseable date, ignore it.
+				return false;
+			}
+			// HTTP dates only have a resolution of one second.
+			return ifModifiedSince >= 0L &&
+				(lastModified.getTime() / 1000L) <= (ifModifiedSince / 1000L);
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns the entity tag a 304 Not Modified for the entity with the
+	 * given (quoted) tag should carry: the tag in the If-None-Match header
+	 * of the request that matched, which names the content coding the
+	 * client already holds, or else the given tag itself.  Saves having
+	 * to negotiate, and so serialize, the entity just to send a 304.
+	 */
+	public static final String getNotModifiedETag(
+		final HttpServletRequest request, final String etag) {
+		final String ifNoneMatch, matched;
+		if((ifNoneMatch = request.getHeader(IF_NONE_MATCH)) != null &&
+			(matched = match(ifNoneMatch, etag)) != null &&
+			!ANY_ETAG.equals(matched)) {
+			return matched;
+		}
+		return etag;
+	}
+	
+	/**
+	 * Weak comparison of the given quoted tag against each tag in the
+	 * given If-None-Match header.  Tags we suffixed with a content coding
+	 * match their unencoded entity tag.  Returns the tag that matched, or
+	 * null if none did.
+	 */
+	private static final String match(final String ifNoneMatch,
+		final String etag) {
+		final String opaque = opaque(etag);
+		int start = 0;
+		final int length = ifNoneMatch.length();
+		while(start < length) {
+			int end = ifNoneMatch.indexOf(ETAG_SEPARATOR, start);
+			if(end < 0) {
+				end = length;
+			}
+			final String candidate = ifNoneMatch.substring(start, end).trim();
+			if(ANY_ETAG.equals(candidate)) {
+				return candidate;
+			}
+			final String other = opaque(candidate);
+			if(other.equals(opaque) || isEncodingOf(other, opaque)) {
+				return candidate;
+			}
+			start = end + 1;
+		}
+		return null;
+	}
+	
+	private static final boolean isEncodingOf(final String other,
+		final String opaque) {
+		if(other.length() > opaque.length() + 1 && other.startsWith(opaque) &&
+			other.charAt(opaque.length()) == ENCODING_SUFFIX_SEPARATOR) {
+			final String token = other.substring(opaque.length() + 1);
+			for(final ContentEncoding encoding : ContentEncoding.values()) {
+				if(encoding.getToken().equals(token)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Strips the weakness indicator and quotes off of an entity tag.
+	 */
+	private static final String opaque(final String etag) {
+		String tag = etag;
+		if(tag.startsWith(WEAK_PREFIX)) {
+			tag = tag.substring(WEAK_PREFIX.length());
+		}
+		if(tag.length() >= 2 && tag.charAt(0) == QUOTE &&
+			tag.charAt(tag.length() - 1) == QUOTE) {
+			tag = tag.substring(1, tag.length() - 1);
+		}
+		return tag;
+	}
+	
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.views;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * The content codings supported by the compression stage of
+ * {@link AbstractKolichView}, in order of preference.
+ * 
+ * @author Mark Kolich
+ *
+ */
+public enum ContentEncoding {
+	
+	GZIP("gzip", true),
+	DEFLATE("deflate", false);
+	
+	private static final char TOKEN_SEPARATOR = ',';
+	private static final char PARAM_SEPARATOR = ';';
+	private static final String QVALUE_PARAM = "q=";
+	private static final String WILDCARD = "*";
+	
+	private static final int STREAM_BUFFER_SIZE = 8 * 1024;
+	
+	private final String token_;
+	private final boolean nowrap_;
+	
+	private ContentEncoding(final String token, final boolean nowrap) {
+		token_ = token;
+		nowrap_ = nowrap;
+	}
+	
+	/**
+	 * The value of this coding in the Accept-Encoding and
+	 * Content-Encoding headers.
+	 */
+	public String getToken() {
+		return token_;
+	}
+	
+	/**
+	 * True if the raw deflate stream of this coding is wrapped by
+	 * something other than the zlib header and trailer.
+	 */
+	boolean isNowrap() {
+		return nowrap_;
+	}
+	
+	/**
+	 * Wraps the given stream with one that encodes everything written to
+	 * it using this coding and the given {@link Deflater}.  The caller
+	 * must call {@link DeflaterOutputStream#finish()} when done, and owns
+	 * the deflater; closing the returned stream never ends it.
+	 */
+	DeflaterOutputStream wrap(final OutputStream os, final Deflater deflater)
+		throws IOException {
+		return (nowrap_) ?
+			new GzipDeflaterOutputStream(os, deflater, STREAM_BUFFER_SIZE) :
+			new DeflaterOutputStream(os, deflater, STREAM_BUFFER_SIZE);
+	}
+	
+	/**
+	 * Picks the most preferred coding acceptable to the client according
+	 * to the given Accept-Encoding header, or null if the client didn't
+	 * send one or will not accept any of our codings.
+	 */
+	public static final ContentEncoding negotiate(final String acceptEncoding) {
+		if(acceptEncoding == null) {
+			return null;
+		}
+		for(final ContentEncoding encoding : values()) {
+			if(isAcceptable(acceptEncoding, encoding.token_)) {
+				return encoding;
+			}
+		}
+		return null;
+	}
+	
+	private static final boolean isAcceptable(final String acceptEncoding,
+		final String token) {
+		boolean wildcard = false;
+		int start = 0;
+		final int length = acceptEncoding.length();
+		while(start < length) {
+			int end = acceptEncoding.indexOf(TOKEN_SEPARATOR, start);
+			if(end < 0) {
+				end = length;
+			}
+			final String element = acceptEncoding.substring(start, end).trim();
+			final int params = element.indexOf(PARAM_SEPARATOR);
+			final String coding = ((params < 0) ? element :
+				element.substring(0, params)).trim();
+			final boolean accepted = (params < 0) ||
+				!isZeroQvalue(element.substring(params + 1));
+			if(coding.equalsIgnoreCase(token)) {
+				// An explicit mention always wins over the wildcard.
+				return accepted;
+			} else if(WILDCARD.equals(coding)) {
+				wildcard = accepted;
+			}
+			start = end + 1;
+		}
+		return wildcard;
+	}
+	
+	private static final boolean isZeroQvalue(final String params) {
+		for(final String param : params.split(String.valueOf(PARAM_SEPARATOR))) {
+			final String p = param.trim();
+			if(p.regionMatches(true, 0, QVALUE_PARAM, 0, QVALUE_PARAM.length())) {
+				try {
+					return Float.parseFloat(p.substring(QVALUE_PARAM.length())
+						.trim()) <= 0.0f;
+				} catch (NumberFormatException e) {
+					// Bogus q-value, treat it as not acceptable.
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+}
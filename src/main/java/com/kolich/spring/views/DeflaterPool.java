@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.views;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * A small, bounded pool of {@link Deflater}'s.  Each one holds on to a
+ * sizeable chunk of native memory that is only freed by
+ * {@link Deflater#end()} (or eventually, finalization) so creating a new
+ * one for every compressed response is both slow and wasteful.
+ * 
+ * @author Mark Kolich
+ *
+ */
+final class DeflaterPool {
+	
+	private final int level_;
+	private final boolean nowrap_;
+	private final int maxIdle_;
+	
+	private final Queue<Deflater> idle_ = new ConcurrentLinkedQueue<Deflater>();
+	private final AtomicInteger idleCount_ = new AtomicInteger(0);
+	
+	DeflaterPool(final int level, final boolean nowrap, final int maxIdle) {
+		level_ = level;
+		nowrap_ = nowrap;
+		maxIdle_ = maxIdle;
+	}
+	
+	public Deflater borrow() {
+		final Deflater deflater;
+		if((deflater = idle_.poll()) != null) {
+			idleCount_.decrementAndGet();
+			return deflater;
+		}
+		return new Deflater(level_, nowrap_);
+	}
+	
+	public void release(final Deflater deflater) {
+		deflater.reset();
+		if(idleCount_.incrementAndGet() <= maxIdle_) {
+			idle_.offer(deflater);
+		} else {
+			// Pool is full, let this one go for good.
+			idleCount_.decrementAndGet();
+			deflater.end();
+		}
+	}
+	
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.views;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * A gzip output stream that, unlike {@link java.util.zip.GZIPOutputStream},
+ * writes through a caller supplied (and presumably pooled) raw
+ * {@link Deflater} instead of allocating a new one every time.  The
+ * deflater must have been created with <code>nowrap</code> set.
+ * 
+ * @author Mark Kolich
+ *
+ */
+final class GzipDeflaterOutputStream extends DeflaterOutputStream {
+	
+	private static final int GZIP_MAGIC = 0x8b1f;
+	private static final int TRAILER_SIZE = 8;
+	
+	/**
+	 * Magic number, CM=8 (deflate), no flags, no mtime, no extra flags,
+	 * unknown OS; see RFC 1952.
+	 */
+	private static final byte[] HEADER = {
+		(byte)GZIP_MAGIC, (byte)(GZIP_MAGIC >> 8), Deflater.DEFLATED,
+		0, 0, 0, 0, 0, 0, (byte)0xff
+	};
+	
+	private final CRC32 crc_ = new CRC32();
+	private boolean finished_ = false;
+	
+	GzipDeflaterOutputStream(final OutputStream os, final Deflater deflater,
+		final int size) throws IOException {
+		super(os, deflater, size);
+		out.write(HEADER);
+	}
+	
+	@Override
+	public synchronized void write(final byte[] b, final int off,
+		final int len) throws IOException {
+		super.write(b, off, len);
+		crc_.update(b, off, len);
+	}
+	
+	@Override
+	public void finish() throws IOException {
+		if(!finished_) {
+			super.finish();
+			final byte[] trailer = new byte[TRAILER_SIZE];
+			writeInt((int)crc_.getValue(), trailer, 0);
+			// ISIZE is the input size modulo 2^32.
+			writeInt((int)def.getBytesRead(), trailer, 4);
+			out.write(trailer);
+			finished_ = true;
+		}
+	}
+	
+	private static final void writeInt(final int i, final byte[] buf,
+		final int offset) {
+		buf[offset] = (byte)i;
+		buf[offset + 1] = (byte)(i >> 8);
+		buf[offset + 2] = (byte)(i >> 16);
+		buf[offset + 3] = (byte)(i >> 24);
+	}
+	
+}
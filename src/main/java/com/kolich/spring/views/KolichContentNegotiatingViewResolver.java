@@ -26,15 +26,27 @@
 
 package com.kolich.spring.views;
 
+import static org.springframework.web.servlet.View.SELECTED_CONTENT_TYPE;
+
 import java.util.List;
 import java.util.Locale;
 
+import javax.servlet.http.HttpServletRequest;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 import org.springframework.web.servlet.View;
 import org.springframework.web.servlet.ViewResolver;
 import org.springframework.web.servlet.view.ContentNegotiatingViewResolver;
 
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 /**
  * We use our own view resolver because Spring's default
  * {@link ContentNegotiatingViewResolver} does not quite do what we want. In
@@ -47,6 +59,18 @@ import org.springframework.web.servlet.view.ContentNegotiatingViewResolver;
  * right one.  This second check essentially elminates the need to look at
  * the accept header, etc.
  * 
+ * Optionally, the outcome of every resolution (including misses that fell
+ * back to the global default view, and utter failures) can be memoized
+ * in a bounded cache keyed by view name, locale and the media types
+ * requested by the client, so that storms of requests for the same view
+ * (error pages, usually) don't walk the whole resolver chain each time.
+ * 
+ * Also optionally, error views can be prerendered: each one is rendered
+ * for real only once per locale, the first time it's used, and served
+ * from memory after that.  During an incident, when the error rate is
+ * at its highest, the mostly static error pages then cost next to
+ * nothing to render.
+ * 
  * @author Mark Kolich
  *
  */
@@ -65,8 +89,75 @@ public final class KolichContentNegotiatingViewResolver
 	private List<ViewResolver> viewResolvers_;	
 	private String globalDefaultView_ = null;
 	
+	/**
+	 * Memoized resolution outcomes; null when disabled.
+	 */
+	private Cache<ResolutionKey, Resolution> resolutions_ = null;
+	
+	/**
+	 * Prerendered error views, by view name and locale; null when
+	 * disabled.
+	 */
+	private Cache<ResolutionKey, PrerenderedErrorView> errorViews_ = null;
+	
 	@Override
 	public View resolveViewName(String viewName, Locale locale)
+		throws Exception {
+		if(errorViews_ != null && viewName.startsWith(ERROR_VIEWS)) {
+			return resolveErrorView(viewName, locale);
+		}
+		final HttpServletRequest request;
+		if(resolutions_ == null || (request = getCurrentRequest()) == null) {
+			return doResolveViewName(viewName, locale);
+		}
+		// Error views are resolved by name only, so the requested media
+		// types don't matter for them.
+		final ResolutionKey key = new ResolutionKey(viewName, locale,
+			(viewName.startsWith(ERROR_VIEWS)) ? null : getMediaTypes(request));
+		Resolution resolution;
+		if((resolution = resolutions_.getIfPresent(key)) == null) {
+			// The ContentNegotiatingViewResolver records the media type
+			// it picked as a request attribute, which we need to remember
+			// so we can put it back on every cache hit.
+			final Object previous = request.getAttribute(SELECTED_CONTENT_TYPE);
+			request.removeAttribute(SELECTED_CONTENT_TYPE);
+			final View view = doResolveViewName(viewName, locale);
+			final Object selected = request.getAttribute(SELECTED_CONTENT_TYPE);
+			if(selected == null && previous != null) {
+				request.setAttribute(SELECTED_CONTENT_TYPE, previous);
+			}
+			resolutions_.put(key, new Resolution(view,
+				(selected instanceof MediaType) ? (MediaType)selected : null));
+			return view;
+		}
+		if(resolution.selectedContentType_ != null) {
+			request.setAttribute(SELECTED_CONTENT_TYPE,
+				resolution.selectedContentType_);
+		}
+		return resolution.view_;
+	}
+	
+	private View resolveErrorView(String viewName, Locale locale)
+		throws Exception {
+		// Error views are resolved by name only, so they don't touch
+		// the request and have no media types to remember.
+		final ResolutionKey key = new ResolutionKey(viewName, locale, null);
+		PrerenderedErrorView errorView;
+		if((errorView = errorViews_.getIfPresent(key)) == null) {
+			final View view;
+			if((view = doResolveViewName(viewName, locale)) == null) {
+				return null;
+			}
+			final PrerenderedErrorView existing;
+			if((existing = errorViews_.asMap().putIfAbsent(key,
+				errorView = new PrerenderedErrorView(view))) != null) {
+				errorView = existing;
+			}
+		}
+		return errorView;
+	}
+	
+	private View doResolveViewName(String viewName, Locale locale)
 		throws Exception {
 		// If the view name does not start with "errors", then
 		// we can ask the ContentNegotiatingViewResolver what it
@@ -125,6 +216,67 @@ public final class KolichContentNegotiatingViewResolver
 		return view;
 	}
 		
+	private static final HttpServletRequest getCurrentRequest() {
+		final RequestAttributes attrs =
+			RequestContextHolder.getRequestAttributes();
+		return (attrs instanceof ServletRequestAttributes) ?
+			((ServletRequestAttributes)attrs).getRequest() : null;
+	}
+	
+	/**
+	 * Enables memoization of view resolution outcomes, bounded to the
+	 * given number of entries.  Zero, the default, disables it.  Only
+	 * turn this on if the resolved views do not depend on anything other
+	 * than view name, locale and the requested media types.
+	 */
+	public void setResolutionCacheSize(long resolutionCacheSize) {
+		resolutions_ = (resolutionCacheSize > 0L) ?
+			CacheBuilder.newBuilder().maximumSize(resolutionCacheSize)
+				.<ResolutionKey, Resolution>build() : null;
+	}
+	
+	/**
+	 * Forgets every memoized view resolution outcome, and every
+	 * prerendered error view.  Call this after changing any of the
+	 * wrapped view resolvers, or their views.
+	 */
+	public void clearResolutionCache() {
+		if(resolutions_ != null) {
+			resolutions_.invalidateAll();
+		}
+		if(errorViews_ != null) {
+			errorViews_.invalidateAll();
+		}
+	}
+	
+	/**
+	 * Enables prerendered error views, keeping at most the given number
+	 * of them (one per error view name and locale).  Each error view is
+	 * then really rendered only once, the first time it's used, and its
+	 * output is replayed from memory after that no matter the model or
+	 * the request.  Zero, the default, disables it.  Only turn this on
+	 * if the error views render the same thing every time.
+	 */
+	public void setErrorViewCacheSize(long errorViewCacheSize) {
+		errorViews_ = (errorViewCacheSize > 0L) ?
+			CacheBuilder.newBuilder().maximumSize(errorViewCacheSize)
+				.<ResolutionKey, PrerenderedErrorView>build() : null;
+	}
+	
+	/**
+	 * Throws away the output of every prerendered error view, so that
+	 * each is rendered afresh the next time it's used.  Call this after
+	 * the content behind any of the error views changed.
+	 */
+	public void refreshErrorViews() {
+		if(errorViews_ != null) {
+			for(final PrerenderedErrorView errorView :
+				errorViews_.asMap().values()) {
+				errorView.refresh();
+			}
+		}
+	}
+		
 	/**
 	 * Sets the view resolvers to be wrapped by this view resolver.
 	 */
@@ -141,4 +293,58 @@ public final class KolichContentNegotiatingViewResolver
 		globalDefaultView_ = globalDefaultView;
 	}
 	
+	private static final class ResolutionKey {
+		
+		private final String viewName_;
+		private final Locale locale_;
+		private final List<MediaType> mediaTypes_;
+		private final int hashCode_;
+		
+		private ResolutionKey(final String viewName, final Locale locale,
+			final List<MediaType> mediaTypes) {
+			viewName_ = viewName;
+			locale_ = locale;
+			mediaTypes_ = mediaTypes;
+			hashCode_ = Objects.hashCode(viewName_, locale_, mediaTypes_);
+		}
+		
+		@Override
+		public boolean equals(final Object obj) {
+			if(this == obj) {
+				return true;
+			} else if(!(obj instanceof ResolutionKey)) {
+				return false;
+			}
+			final ResolutionKey other = (ResolutionKey)obj;
+			return hashCode_ == other.hashCode_ &&
+				Objects.equal(viewName_, other.viewName_) &&
+				Objects.equal(locale_, other.locale_) &&
+				Objects.equal(mediaTypes_, other.mediaTypes_);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hashCode_;
+		}
+		
+	}
+	
+	/**
+	 * The outcome of resolving a view: the view itself (which may be the
+	 * global default view, or null if nothing could be resolved at all)
+	 * and the content type negotiated for it, if any.
+	 */
+	private static final class Resolution {
+		
+		private final View view_;
+		private final MediaType selectedContentType_;
+		
+		private Resolution(final View view,
+			final MediaType selectedContentType) {
+			view_ = view;
+			selectedContentType_ = selectedContentType;
+		}
+		
+	}
+	
 }
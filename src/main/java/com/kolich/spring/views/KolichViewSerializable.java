@@ -26,26 +26,120 @@
 
 package com.kolich.spring.views;
 
+import java.io.OutputStream;
 import java.util.Date;
 
 import com.kolich.common.entities.KolichCommonEntity;
 
 public abstract class KolichViewSerializable {
 
+	/**
+	 * The default Expires date, shared by every response, so it must
+	 * not be changed.
+	 */
+	private static final Date EPOCH = new ImmutableDate(1L);
+	
 	/**
 	 * Returns the entity payload of this response.
 	 * @throws Exception
 	 */
 	public abstract KolichCommonEntity getEntity() throws Exception;
 	
+	/**
+	 * Returns true if this payload would rather write its entity directly
+	 * to the response via {@link #writeEntity(OutputStream)} instead of
+	 * handing over a fully serialized byte[] from {@link #getEntity()}.
+	 * Large payloads should stream so that the whole body never has to
+	 * sit in the heap at once.
+	 * @return default false
+	 */
+	public boolean isStreaming() {
+		return false;
+	}
+	
+	/**
+	 * Writes the entity payload of this response directly to the given
+	 * {@link OutputStream}.  Only called when {@link #isStreaming()}
+	 * returns true.  Implementations should not close the stream.
+	 * @param os
+	 * @throws Exception
+	 */
+	public void writeEntity(final OutputStream os) throws Exception {
+		os.write(getEntity().getBytes());
+	}
+	
+	/**
+	 * Returns true if {@link #getEntity()} always returns the very same
+	 * entity instance, whose serialized form never changes.  Views may
+	 * then cache work derived from it, like its compressed bytes, for
+	 * as long as that instance is alive.
+	 * @return default false
+	 */
+	public boolean isImmutable() {
+		return false;
+	}
+	
+	/**
+	 * Returns the key under which views may cache the rendered form of
+	 * this response, if they have a render cache.  Payloads that return
+	 * the same key must render to the same bytes, for as long as the
+	 * cache TTL says.  Return null to never cache this response.
+	 * @return default null
+	 */
+	public String getCacheKey() {
+		return null;
+	}
+	
+	/**
+	 * Returns the number of milliseconds a rendered response cached under
+	 * {@link #getCacheKey()} stays fresh.  Zero, or less, means until it
+	 * is evicted to make room for something else.
+	 * @return default 0
+	 */
+	public long getCacheTtl() {
+		return 0L;
+	}
+	
+	/**
+	 * Returns the length, in bytes, of the entity written by
+	 * {@link #writeEntity(OutputStream)} if it is known ahead of time.
+	 * @return default -1, unknown
+	 */
+	public long getContentLength() {
+		return -1L;
+	}
+	
 	/**
 	 * Should return the Date that can be included in an Expires
 	 * HTTP response header.  Return null for no Expires response
 	 * header to be added.
-	 * @return default January 1, 1970, 00:00:00 GMT
+	 * @return default January 1, 1970, 00:00:00 GMT, a shared instance
+	 * that cannot be changed
 	 */
 	public Date getExpires() {
-		return new Date(1L);
+		return EPOCH;
+	}
+	
+	/**
+	 * Returns the entity tag of this response, used as a strong ETag
+	 * validator.  Payloads that can cheaply tell which version of the
+	 * entity they hold should return it here, so that a conditional GET
+	 * can be answered without ever serializing the entity.  Quotes are
+	 * optional.  Return null for no entity tag.
+	 * @return default null
+	 */
+	public String getETag() {
+		return null;
+	}
+	
+	/**
+	 * Returns the Date the entity of this response last changed, which
+	 * will be sent in a Last-Modified HTTP response header and used to
+	 * answer If-Modified-Since.  Return null for no Last-Modified.
+	 * @return default null
+	 */
+	public Date getLastModified() {
+		return null;
 	}
 	
 	/**
@@ -59,4 +153,50 @@ public abstract class KolichViewSerializable {
 		return true;
 	}
 	
+	@SuppressWarnings("deprecation")
+	private static final class ImmutableDate extends Date {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private ImmutableDate(final long date) {
+			super(date);
+		}
+		
+		@Override
+		public void setTime(final long time) {
+			throw new UnsupportedOperationException();
+		}
+		
+		@Override
+		public void setYear(final int year) {
+			throw new UnsupportedOperationException();
+		}
+		
+		@Override
+		public void setMonth(final int month) {
+			throw new UnsupportedOperationException();
+		}
+		
+		@Override
+		public void setDate(final int date) {
+			throw new UnsupportedOperationException();
+		}
+		
+		@Override
+		public void setHours(final int hours) {
+			throw new UnsupportedOperationException();
+		}
+		
+		@Override
+		public void setMinutes(final int minutes) {
+			throw new UnsupportedOperationException();
+		}
+		
+		@Override
+		public void setSeconds(final int seconds) {
+			throw new UnsupportedOperationException();
+		}
+		
+	}
+	
 }
@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.views;
+
+import static org.springframework.http.MediaType.APPLICATION_OCTET_STREAM;
+
+import java.io.IOException;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+/**
+ * Writes a {@link KolichViewSerializable} returned in a
+ * {@link org.springframework.http.ResponseEntity} straight to the
+ * response body.  Streaming serializables are written through
+ * {@link KolichViewSerializable#writeEntity(java.io.OutputStream)}, so
+ * their payload never sits in the heap as one big byte[].  Register this
+ * with the message converters of the handler adapter to use it.
+ */
+public final class KolichViewSerializableHttpMessageConverter
+	extends AbstractHttpMessageConverter<KolichViewSerializable> {
+	
+	public KolichViewSerializableHttpMessageConverter() {
+		super(MediaType.ALL);
+	}
+	
+	@Override
+	protected boolean supports(final Class<?> clazz) {
+		return KolichViewSerializable.class.isAssignableFrom(clazz);
+	}
+	
+	@Override
+	public boolean canRead(final Class<?> clazz, final MediaType mediaType) {
+		return false;
+	}
+	
+	@Override
+	protected KolichViewSerializable readInternal(
+		final Class<? extends KolichViewSerializable> clazz,
+		final HttpInputMessage inputMessage) throws IOException {
+		throw new HttpMessageNotReadableException("Reading " +
+			"KolichViewSerializable's from a request is not supported.");
+	}
+	
+	@Override
+	protected MediaType getDefaultContentType(
+		final KolichViewSerializable serializable) {
+		return APPLICATION_OCTET_STREAM;
+	}
+	
+	@Override
+	protected Long getContentLength(final KolichViewSerializable serializable,
+		final MediaType contentType) {
+		if(!serializable.isStreaming()) {
+			return null;
+		}
+		final long length = serializable.getContentLength();
+		return (length >= 0L) ? length : null;
+	}
+	
+	@Override
+	protected void writeInternal(final KolichViewSerializable serializable,
+		final HttpOutputMessage outputMessage) throws IOException {
+		try {
+			if(serializable.isStreaming()) {
+				serializable.writeEntity(outputMessage.getBody());
+			} else {
+				outputMessage.getBody().write(
+					serializable.getEntity().getBytes());
+			}
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new HttpMessageNotWritableException("Failed to write " +
+				"entity.", e);
+		}
+	}
+	
+}
@@ -0,0 +1,410 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.views;
+
+import static com.google.common.net.HttpHeaders.CONTENT_ENCODING;
+import static com.google.common.net.HttpHeaders.CONTENT_LENGTH;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.web.servlet.View;
+
+/**
+ * Wraps an error view so that it is only really rendered once.  The
+ * first render goes through the wrapped view as usual, but its body is
+ * captured on the way out, along with the content type and headers it
+ * set.  Every render after that just replays those from memory, no
+ * matter the model or the request.
+ *
+ * A render that did anything other than write a plain, complete body
+ * (send an error or a redirect, change the response status, encode the
+ * content, or write more than {@link #MAX_PRERENDERED_SIZE} bytes) still
+ * reaches the client, but is not kept, so the next render tries again.
+ *
+ * @author Mark Kolich
+ *
+ */
+final class PrerenderedErrorView implements View {
+
+	private static final int MAX_PRERENDERED_SIZE = 1024 * 1024;
+	
+	private final View delegate_;
+	
+	/**
+	 * The captured render, or null if there isn't one (yet).
+	 */
+	private volatile Prerendering prerendering_ = null;
+	
+	PrerenderedErrorView(final View delegate) {
+		delegate_ = delegate;
+	}
+	
+	@Override
+	public String getContentType() {
+		return delegate_.getContentType();
+	}
+	
+	@Override
+	public void render(final Map<String, ?> model,
+		final HttpServletRequest request, final HttpServletResponse response)
+		throws Exception {
+		final Prerendering prerendering;
+		if((prerendering = prerendering_) != null) {
+			prerendering.replay(response);
+			return;
+		}
+		// Concurrent first renders may each capture their own copy; any
+		// one of them is as good as the other.
+		final CapturingResponse capture = new CapturingResponse(response);
+		delegate_.render(model, new SynchronousRequest(request), capture);
+		final byte[] body = capture.getBody();
+		if(capture.isReplayable() && body.length <= MAX_PRERENDERED_SIZE) {
+			prerendering_ = new Prerendering(response.getContentType(),
+				response.getLocale(), capture.headers_, body);
+		}
+		if(body.length > 0) {
+			writeBody(response, body);
+		}
+	}
+	
+	/**
+	 * Throws away the captured render, if any, so that the next render
+	 * goes through the wrapped view again.
+	 */
+	void refresh() {
+		prerendering_ = null;
+	}
+	
+	private static final void writeBody(final HttpServletResponse response,
+		final byte[] body) throws IOException {
+		response.setContentLength(body.length);
+		final ServletOutputStream os = response.getOutputStream();
+		try {
+			os.write(body);
+		} finally {
+			os.close();
+		}
+	}
+	
+	/**
+	 * A render of the wrapped view, as captured.  Immutable.
+	 */
+	private static final class Prerendering {
+		
+		private final String contentType_;
+		private final Locale locale_;
+		private final List<Header> headers_;
+		private final byte[] body_;
+		
+		private Prerendering(final String contentType, final Locale locale,
+			final List<Header> headers, final byte[] body) {
+			contentType_ = contentType;
+			locale_ = locale;
+			headers_ = new ArrayList<Header>(headers);
+			body_ = body;
+		}
+		
+		private void replay(final HttpServletResponse response)
+			throws IOException {
+			if(contentType_ != null) {
+				response.setContentType(contentType_);
+			}
+			if(locale_ != null) {
+				response.setLocale(locale_);
+			}
+			for(final Header header : headers_) {
+				header.replay(response);
+			}
+			writeBody(response, body_);
+		}
+	
+	}
+	
+	/**
+	 * A header set by the wrapped view, as it was set.
+	 */
+	private static final class Header {
+		
+		private final String name_;
+		private final String value_;
+		private final long date_;
+		private final boolean add_;
+		
+		private Header(final String name, final String value,
+			final long date, final boolean add) {
+			name_ = name;
+			value_ = value;
+			date_ = date;
+			add_ = add;
+		}
+		
+		private void replay(final HttpServletResponse response) {
+			if(value_ == null) {
+				if(add_) {
+					response.addDateHeader(name_, date_);
+				} else {
+					response.setDateHeader(name_, date_);
+				}
+			} else if(add_) {
+				response.addHeader(name_, value_);
+			} else {
+				response.setHeader(name_, value_);
+			}
+		}
+	
+	}
+	
+	/**
+	 * Keeps the wrapped view from handing the response off to the
+	 * container asynchronously, which would leave nothing to capture.
+	 */
+	private static final class SynchronousRequest
+		extends HttpServletRequestWrapper {
+		
+		private SynchronousRequest(final HttpServletRequest request) {
+			super(request);
+		}
+		
+		@Override
+		public boolean isAsyncSupported() {
+			return false;
+		}
+	
+	}
+	
+	/**
+	 * Passes everything but the body through to the real response, and
+	 * keeps track of whatever was set so it can be replayed later.
+	 */
+	private static final class CapturingResponse
+		extends HttpServletResponseWrapper {
+		
+		private final ByteArrayOutputStream body_ =
+			new ByteArrayOutputStream();
+		private final List<Header> headers_ = new ArrayList<Header>();
+		private final int status_;
+		
+		private ServletOutputStream os_ = null;
+		private PrintWriter writer_ = null;
+		private boolean replayable_ = true;
+		
+		private CapturingResponse(final HttpServletResponse response) {
+			super(response);
+			status_ = response.getStatus();
+		}
+		
+		private byte[] getBody() {
+			if(writer_ != null) {
+				writer_.flush();
+			}
+			return body_.toByteArray();
+		}
+		
+		private boolean isReplayable() {
+			return replayable_;
+		}
+		
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			if(writer_ != null) {
+				throw new IllegalStateException("getWriter() has already " +
+					"been called on this response.");
+			}
+			if(os_ == null) {
+				os_ = new ServletOutputStream() {
+					@Override
+					public void write(final int b) {
+						body_.write(b);
+					}
+					@Override
+					public void write(final byte[] b, final int off,
+						final int len) {
+						body_.write(b, off, len);
+					}
+					@Override
+					public boolean isReady() {
+						return true;
+					}
+					@Override
+					public void setWriteListener(final WriteListener listener) {
+						throw new IllegalStateException("Response is " +
+							"being captured, not written asynchronously.");
+					}
+				};
+			}
+			return os_;
+		}
+		
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			if(os_ != null) {
+				throw new IllegalStateException("getOutputStream() has " +
+					"already been called on this response.");
+			}
+			if(writer_ == null) {
+				writer_ = new PrintWriter(new OutputStreamWriter(body_,
+					getCharacterEncoding()));
+			}
+			return writer_;
+		}
+		
+		@Override
+		public void setContentLength(final int len) {
+			// Set once the body is known.
+		}
+		
+		@Override
+		public void setContentLengthLong(final long len) {
+			// Set once the body is known.
+		}
+		
+		@Override
+		public void flushBuffer() {
+			// Nothing reaches the client until the render is done.
+			if(writer_ != null) {
+				writer_.flush();
+			}
+		}
+		
+		@Override
+		public void resetBuffer() {
+			super.resetBuffer();
+			if(writer_ != null) {
+				writer_.flush();
+			}
+			body_.reset();
+		}
+		
+		@Override
+		public void reset() {
+			super.reset();
+			if(writer_ != null) {
+				writer_.flush();
+			}
+			body_.reset();
+			headers_.clear();
+		}
+		
+		@Override
+		public void setStatus(final int sc) {
+			super.setStatus(sc);
+			replayable_ &= (sc == status_);
+		}
+		
+		@Override
+		@Deprecated
+		public void setStatus(final int sc, final String sm) {
+			super.setStatus(sc, sm);
+			replayable_ = false;
+		}
+		
+		@Override
+		public void sendError(final int sc) throws IOException {
+			super.sendError(sc);
+			replayable_ = false;
+		}
+		
+		@Override
+		public void sendError(final int sc, final String msg)
+			throws IOException {
+			super.sendError(sc, msg);
+			replayable_ = false;
+		}
+		
+		@Override
+		public void sendRedirect(final String location) throws IOException {
+			super.sendRedirect(location);
+			replayable_ = false;
+		}
+		
+		@Override
+		public void setHeader(final String name, final String value) {
+			if(!isBodyHeader(name)) {
+				super.setHeader(name, value);
+				headers_.add(new Header(name, value, 0L, false));
+			}
+		}
+		
+		@Override
+		public void addHeader(final String name, final String value) {
+			if(!isBodyHeader(name)) {
+				super.addHeader(name, value);
+				headers_.add(new Header(name, value, 0L, true));
+			}
+		}
+		
+		@Override
+		public void setIntHeader(final String name, final int value) {
+			setHeader(name, Integer.toString(value));
+		}
+		
+		@Override
+		public void addIntHeader(final String name, final int value) {
+			addHeader(name, Integer.toString(value));
+		}
+		
+		@Override
+		public void setDateHeader(final String name, final long date) {
+			super.setDateHeader(name, date);
+			headers_.add(new Header(name, null, date, false));
+		}
+		
+		@Override
+		public void addDateHeader(final String name, final long date) {
+			super.addDateHeader(name, date);
+			headers_.add(new Header(name, null, date, true));
+		}
+		
+		/**
+		 * The length of the body is set once it is known.  An encoded
+		 * body is only good for clients that accept that encoding, so
+		 * it is never kept.
+		 */
+		private boolean isBodyHeader(final String name) {
+			if(CONTENT_ENCODING.equalsIgnoreCase(name)) {
+				replayable_ = false;
+			}
+			return CONTENT_LENGTH.equalsIgnoreCase(name);
+		}
+	
+	}
+
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.views;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * A bounded cache of already rendered entities, keyed by the cache key
+ * declared by the payload via {@link KolichViewSerializable#getCacheKey()}.
+ * Each view owns its own cache, so the same key rendered by two different
+ * views never collides.  Eviction is based on the total size of the
+ * cached bytes, including every encoded variant.
+ * 
+ * Loads are single-flight per key: when an entry is missing or expired,
+ * exactly one caller serializes the entity while any concurrent callers
+ * for the same key wait for, and then share, its result.
+ * 
+ * @author Mark Kolich
+ *
+ */
+final class RenderCache {
+	
+	private final Cache<String, RenderedEntity> cache_;
+	
+	RenderCache(final long maxBytes) {
+		cache_ = CacheBuilder.newBuilder()
+			.maximumWeight(maxBytes)
+			.weigher(new Weigher<String, RenderedEntity>() {
+				@Override
+				public int weigh(final String key, final RenderedEntity value) {
+					return value.getWeight();
+				}
+			}).<String, RenderedEntity>build();
+	}
+	
+	/**
+	 * Returns the rendered entity cached under the given key, using the
+	 * given loader to (re)render it if it's missing or expired.
+	 */
+	public RenderedEntity get(final String key,
+		final Callable<RenderedEntity> loader) throws Exception {
+		final RenderedEntity cached;
+		if((cached = cache_.getIfPresent(key)) != null) {
+			if(!cached.isExpired(System.currentTimeMillis())) {
+				return cached;
+			}
+			// Only removes the exact entry we saw, so if another thread
+			// has already replaced it we'll simply pick up the new one.
+			cache_.asMap().remove(key, cached);
+		}
+		try {
+			return cache_.get(key, loader);
+		} catch (ExecutionException e) {
+			throw (Exception)e.getCause();
+		} catch (UncheckedExecutionException e) {
+			throw (RuntimeException)e.getCause();
+		} catch (ExecutionError e) {
+			throw (Error)e.getCause();
+		}
+	}
+	
+	public void invalidate(final String key) {
+		cache_.invalidate(key);
+	}
+	
+	public void invalidateAll() {
+		cache_.invalidateAll();
+	}
+	
+	/**
+	 * An entity as rendered by a view: its serialized bytes, any encoded
+	 * variants of those bytes, and its generated ETag, if any.  Immutable.
+	 */
+	static final class RenderedEntity {
+		
+		private final byte[] identity_;
+		private final Map<ContentEncoding, byte[]> encoded_;
+		private final String etag_;
+		private final long expiresAt_;
+		
+		RenderedEntity(final byte[] identity,
+			final Map<ContentEncoding, byte[]> encoded, final String etag,
+			final long ttl) {
+			identity_ = identity;
+			encoded_ = (encoded.isEmpty()) ?
+				Collections.<ContentEncoding, byte[]>emptyMap() :
+				new EnumMap<ContentEncoding, byte[]>(encoded);
+			etag_ = etag;
+			expiresAt_ = (ttl > 0L) ? System.currentTimeMillis() + ttl :
+				Long.MAX_VALUE;
+		}
+		
+		public byte[] getIdentity() {
+			return identity_;
+		}
+		
+		/**
+		 * Returns the bytes of this entity encoded with the given coding,
+		 * or null if this entity wasn't worth encoding.
+		 */
+		public byte[] getEncoded(final ContentEncoding encoding) {
+			return encoded_.get(encoding);
+		}
+		
+		public String getETag() {
+			return etag_;
+		}
+		
+		public boolean isExpired(final long now) {
+			return now >= expiresAt_;
+		}
+		
+		private int getWeight() {
+			long weight = identity_.length;
+			for(final byte[] bytes : encoded_.values()) {
+				weight += bytes.length;
+			}
+			return (int)Math.min(weight, Integer.MAX_VALUE);
+		}
+		
+	}
+	
+}
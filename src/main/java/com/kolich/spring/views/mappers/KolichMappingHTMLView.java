@@ -28,12 +28,9 @@ package com.kolich.spring.views.mappers;
 
 import static com.kolich.common.DefaultCharacterEncoding.UTF_8;
 
-import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.io.IOUtils;
-
 import com.kolich.spring.views.AbstractKolichView;
 import com.kolich.spring.views.KolichViewSerializable;
 
@@ -52,11 +49,9 @@ public final class KolichMappingHTMLView extends AbstractKolichView {
 	public void myRenderMergedOutputModel(final KolichViewSerializable payload,
 		final HttpServletRequest request, final HttpServletResponse response)
 		throws Exception {		
-		final ServletOutputStream os = response.getOutputStream();
-		// Convert the payload into a JSON response.
-		os.write(payload.getEntity().getBytes());
-		// Quietly close the output stream.
-		IOUtils.closeQuietly(os);
+		// Convert the payload into an HTML response, streaming it if the
+		// payload supports it.
+		renderEntity(payload, request, response, false);
 	}
 	
 	@Override
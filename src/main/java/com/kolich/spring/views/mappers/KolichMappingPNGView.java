@@ -26,12 +26,9 @@
 
 package com.kolich.spring.views.mappers;
 
-import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.io.IOUtils;
-
 import com.kolich.spring.views.AbstractKolichView;
 import com.kolich.spring.views.KolichViewSerializable;
 
@@ -50,15 +47,11 @@ public final class KolichMappingPNGView extends AbstractKolichView {
 	public void myRenderMergedOutputModel(final KolichViewSerializable payload,
 		final HttpServletRequest request, final HttpServletResponse response)
 		throws Exception {
-		final ServletOutputStream os = response.getOutputStream();
 		// Be sure to set the Content-Length header on a MP3 audio file
 		// response to the client (some MP3 players don't like chunked
-		// transfer encoding so this fixes that).
-		final byte[] bytes = payload.getEntity().getBytes();
-		response.setContentLength(bytes.length);
-		os.write(bytes);
-		// Quietly close the output stream.
-		IOUtils.closeQuietly(os);
+		// transfer encoding so this fixes that).  Streaming payloads only
+		// get one if they know their length ahead of time.
+		renderEntity(payload, request, response, true);
 	}
 	
 }
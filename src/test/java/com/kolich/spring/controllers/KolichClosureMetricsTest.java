@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks that closure metrics are only recorded once, and only if, a
+ * {@link KolichClosureMetrics} bean with recording on is initialized.
+ */
+public final class KolichClosureMetricsTest {
+	
+	private static final Logger logger__ =
+		LoggerFactory.getLogger(KolichClosureMetricsTest.class);
+	
+	private final KolichClosureMetrics metrics_ = new KolichClosureMetrics();
+	
+	@After
+	public void tearDown() throws Exception {
+		metrics_.destroy();
+	}
+	
+	@Test
+	public void disabledRecordsNothing() throws Exception {
+		metrics_.setEnabled(false);
+		metrics_.afterPropertiesSet();
+		run("disabled");
+		assertNull(KolichClosureMetrics.snapshot("disabled"));
+	}
+	
+	@Test
+	public void enabledRecordsNamedClosures() throws Exception {
+		metrics_.afterPropertiesSet();
+		run("enabled");
+		final ClosureMetricsSnapshot snapshot;
+		assertNotNull(snapshot = KolichClosureMetrics.snapshot("enabled"));
+		assertEquals(1L, snapshot.getCount());
+	}
+	
+	@Test
+	public void nothingRecordedBeforeInitialization() throws Exception {
+		metrics_.setEnabled(true);
+		run("uninitialized");
+		assertNull(KolichClosureMetrics.snapshot("uninitialized"));
+	}
+	
+	private static final void run(final String name) {
+		new KolichControllerClosure<String>(name, "Test closure.",
+			logger__) {
+			@Override
+			public String doit() throws Exception {
+				return name;
+			}
+		}.execute();
+	}
+	
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.interceptors;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.kolich.spring.interceptors.RequestPathInterceptor.PathMapping;
+
+/**
+ * Checks that {@link CompiledPathMappings} accepts and rejects exactly
+ * what walking every {@link PathMapping} in turn, and calling find() on
+ * each one whose method applies, would.
+ */
+public final class CompiledPathMappingsTest {
+	
+	/**
+	 * Random subsets of the corpus to check on top of the whole corpus
+	 * and each mapping on its own; fused patterns can only misbehave in
+	 * the company of others.
+	 */
+	private static final int RANDOM_SUBSETS = 500;
+	private static final long RANDOM_SEED = 42L;
+	
+	private static final List<String> MAPPINGS = Arrays.asList(
+		// Anchored literals, for the prefix trie.
+		"GET:^http://localhost:8080/api/",
+		"get:^HTTP://LOCALHOST:8080/Mixed/Case/",
+		"POST:^http://localhost:8080/upload\\.do",
+		// Anchored patterns, matched with lookingAt().
+		"GET:^https?://[^/]+/static/.*\\.(js|css)$",
+		"Get:^https?://[^/]+/v\\d+/[a-z]+$",
+		"*:^https?://[^/]+/[]a]/bracket$",
+		// Start anchored, but not anchored once alternation or flags
+		// come into it.
+		"GET:^http://nowhere/|/either$",
+		"*:(?m)^/multiline$",
+		"GET:(?-i)^http://localhost:8080/CaseSensitive$",
+		"POST:(?i:^http://localhost:8080/flagged/)",
+		// Unanchored patterns, fused into one alternation.
+		"*:.*/health$",
+		"GET:/admin(/|$)",
+		"PUT:/items/\\d+",
+		"DELETE:(?<=/)secret$",
+		// Patterns that cannot be fused, and are checked one by one.
+		"GET:/(a|b)\\1/double$",
+		"*:(?<name>/named)/group$",
+		"GET:\\Q/quoted(\\E",
+		"POST:(?x) /comments \\.txt  # a comment",
+		"*:(?ix) /COMMENTS/ wild $");
+	
+	private static final List<String> METHODS = Arrays.asList(
+		"GET", "get", "Get", "POST", "post", "PUT", "DELETE", "HEAD",
+		"OPTIONS", "PATCH", null);
+	
+	private static final List<String> URLS = Arrays.asList(
+		"http://localhost:8080/api/json",
+		"http://localhost:8080/API/json",
+		"http://localhost:8080/ap",
+		"http://localhost:8080/mixed/case/x",
+		"http://localhost:8080/upload.do",
+		"http://localhost:8080/uploadXdo",
+		"https://example.com/static/app.js",
+		"https://example.com/static/app.jsx",
+		"http://example.com/v2/items",
+		"http://example.com/V2/ITEMS",
+		"http://example.com/v2/items/",
+		"http://example.com/a/bracket",
+		"http://example.com/]/bracket",
+		"http://nowhere/at/all",
+		"http://somewhere/either",
+		"http://example.com/x\n/multiline",
+		"http://example.com/multiline",
+		"http://localhost:8080/CaseSensitive",
+		"http://localhost:8080/casesensitive",
+		"http://localhost:8080/FLAGGED/x",
+		"http://example.com/flagged/x",
+		"http://example.com/deep/health",
+		"http://example.com/health/not",
+		"http://example.com/admin",
+		"http://example.com/admin/users",
+		"http://example.com/administrator",
+		"http://example.com/items/12",
+		"http://example.com/secret",
+		"http://example.com/notsecret",
+		"http://example.com/aa/double",
+		"http://example.com/ab/double",
+		"http://example.com/named/group",
+		"http://example.com/quoted(",
+		"http://example.com/comments.txt",
+		"http://example.com/comments/wild",
+		"http://example.com/wp-login.php",
+		"");
+	
+	@Test
+	public void wholeCorpusMatchesNaiveLoop() {
+		assertEquivalent(MAPPINGS);
+	}
+	
+	@Test
+	public void eachMappingMatchesNaiveLoop() {
+		for(final String mapping : MAPPINGS) {
+			assertEquivalent(Collections.singletonList(mapping));
+		}
+	}
+	
+	@Test
+	public void randomSubsetsMatchNaiveLoop() {
+		final Random random = new Random(RANDOM_SEED);
+		for(int i = 0; i < RANDOM_SUBSETS; i++) {
+			final List<String> subset = new ArrayList<String>();
+			for(final String mapping : MAPPINGS) {
+				if(random.nextBoolean()) {
+					subset.add(mapping);
+				}
+			}
+			if(!subset.isEmpty()) {
+				Collections.shuffle(subset, random);
+				assertEquivalent(subset);
+			}
+		}
+	}
+	
+	private static final void assertEquivalent(final List<String> mappings) {
+		final List<PathMapping> compiled = new ArrayList<PathMapping>();
+		for(final String mapping : mappings) {
+			compiled.add(new PathMapping(mapping));
+		}
+		final CompiledPathMappings engine =
+			CompiledPathMappings.build(compiled);
+		for(final String method : METHODS) {
+			for(final String url : URLS) {
+				assertEquals(method + " " + url + " against " + mappings,
+					naiveMatches(compiled, method, url),
+					engine.matches(method, url));
+			}
+		}
+	}
+	
+	/**
+	 * The matching the interceptor did before its mappings were compiled.
+	 */
+	private static final boolean naiveMatches(final List<PathMapping> mappings,
+		final String method, final String url) {
+		for(final PathMapping pm : mappings) {
+			if(pm.isWildcardMethod() ||
+				pm.getMethod().equalsIgnoreCase(method)) {
+				if(pm.getPattern().matcher(url).find()) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.interceptors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Checks that the request path hot path reuses its per-thread URL buffer
+ * and {@link Matcher}'s instead of allocating, and that the reused
+ * matchers do not hang on to the last URL they matched.
+ */
+public final class RequestPathInterceptorTest {
+	
+	private static final int WARMUP_ITERATIONS = 20000;
+	private static final int MEASURED_ITERATIONS = 100000;
+	
+	/**
+	 * Misses against a thousand mappings are slow enough as is, so the
+	 * mapping count runs are shorter.
+	 */
+	private static final int SCALED_WARMUP_ITERATIONS = 2000;
+	private static final int SCALED_MEASURED_ITERATIONS = 10000;
+	
+	/**
+	 * Average bytes a reused buffer request may allocate; anything but
+	 * noise means something on the path allocates per request.
+	 */
+	private static final double MAX_REUSED_BYTES_PER_REQUEST = 1d;
+	
+	private static final List<String> MAPPINGS = Arrays.asList(
+		"GET:^https?://[^/]+/api/(json|html|png)$",
+		"GET:^https?://[^/]+/static/.*$",
+		"*:.*/health$");
+	
+	/**
+	 * Mapping counts the reused buffer path is measured at; what it
+	 * allocates per request must not grow with any of them.
+	 */
+	private static final int[] MAPPING_COUNTS = {3, 100, 1000};
+	
+	private MockHttpServletRequest request_;
+	private MockHttpServletResponse response_;
+	
+	@Before
+	public void setUp() {
+		request_ = new MockHttpServletRequest("GET", "/api/json");
+		request_.setServerName("localhost");
+		request_.setServerPort(8080);
+		response_ = new MockHttpServletResponse();
+	}
+	
+	@Test
+	public void reusedUrlBufferDoesNotAllocate() throws Exception {
+		final com.sun.management.ThreadMXBean threads =
+			getThreadMXBean();
+		final RequestPathInterceptor reused = newInterceptor(true, MAPPINGS);
+		final RequestPathInterceptor fresh = newInterceptor(false, MAPPINGS);
+		final double reusedBytes = getBytesPerRequest(threads, reused,
+			WARMUP_ITERATIONS, MEASURED_ITERATIONS);
+		final double freshBytes = getBytesPerRequest(threads, fresh,
+			WARMUP_ITERATIONS, MEASURED_ITERATIONS);
+		assertTrue("Reused buffer allocated " + reusedBytes + " bytes " +
+			"per request.", reusedBytes < MAX_REUSED_BYTES_PER_REQUEST);
+		assertTrue("Fresh URL's allocated only " + freshBytes + " bytes " +
+			"per request.", freshBytes > reusedBytes);
+	}
+	
+	@Test
+	public void allocationIsFlatInNumberOfMappings() throws Exception {
+		final com.sun.management.ThreadMXBean threads =
+			getThreadMXBean();
+		final double[] hits = new double[MAPPING_COUNTS.length];
+		final double[] misses = new double[MAPPING_COUNTS.length];
+		for(int i = 0; i < MAPPING_COUNTS.length; i++) {
+			final RequestPathInterceptor interceptor = newInterceptor(true,
+				getMappings(MAPPING_COUNTS[i]));
+			request_.setRequestURI("/api/json");
+			hits[i] = getBytesPerRequest(threads, interceptor,
+				SCALED_WARMUP_ITERATIONS, SCALED_MEASURED_ITERATIONS);
+			// A miss has to get past every kind of compiled pattern.
+			request_.setRequestURI("/wp-login.php");
+			misses[i] = getBytesPerRequest(threads, interceptor,
+				SCALED_WARMUP_ITERATIONS, SCALED_MEASURED_ITERATIONS);
+		}
+		for(int i = 0; i < MAPPING_COUNTS.length; i++) {
+			assertTrue("Hits allocated " + hits[i] + " bytes per request " +
+				"with " + MAPPING_COUNTS[i] + " mappings, " + hits[0] +
+				" with " + MAPPING_COUNTS[0] + ".",
+				hits[i] < MAX_REUSED_BYTES_PER_REQUEST);
+			assertTrue("Misses allocated " + misses[i] + " bytes per " +
+				"request with " + MAPPING_COUNTS[i] + " mappings, " +
+				misses[0] + " with " + MAPPING_COUNTS[0] + ".",
+				misses[i] < MAX_REUSED_BYTES_PER_REQUEST);
+		}
+	}
+	
+	@Test
+	public void matchersAreResetAfterMatching() throws Exception {
+		final RequestPathInterceptor interceptor = newInterceptor(false,
+			MAPPINGS);
+		assertTrue(interceptor.preHandle(request_, response_, null));
+		request_.setRequestURI("/wp-login.php");
+		assertTrue(!interceptor.preHandle(request_, response_, null));
+		@SuppressWarnings("unchecked")
+		final ThreadLocal<Matcher[]> matchers = (ThreadLocal<Matcher[]>)
+			ReflectionTestUtils.getField(ReflectionTestUtils.getField(
+				interceptor, "compiled_"), "matchers_");
+		int used = 0;
+		for(final Matcher m : matchers.get()) {
+			if(m != null) {
+				// Reset against the empty input, not the last URL.
+				assertEquals(0, m.regionEnd());
+				used++;
+			}
+		}
+		assertTrue("No matchers were used.", used > 0);
+	}
+	
+	private double getBytesPerRequest(
+		final com.sun.management.ThreadMXBean threads,
+		final RequestPathInterceptor interceptor, final int warmup,
+		final int measured) throws Exception {
+		for(int i = 0; i < warmup; i++) {
+			interceptor.preHandle(request_, response_, null);
+		}
+		final long thread = Thread.currentThread().getId();
+		final long before = threads.getThreadAllocatedBytes(thread);
+		for(int i = 0; i < measured; i++) {
+			interceptor.preHandle(request_, response_, null);
+		}
+		final long after = threads.getThreadAllocatedBytes(thread);
+		return (after - before) / (double)measured;
+	}
+	
+	private static final com.sun.management.ThreadMXBean getThreadMXBean() {
+		final java.lang.management.ThreadMXBean threads =
+			ManagementFactory.getThreadMXBean();
+		assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+		final com.sun.management.ThreadMXBean sun =
+			(com.sun.management.ThreadMXBean)threads;
+		assumeTrue(sun.isThreadAllocatedMemorySupported());
+		sun.setThreadAllocatedMemoryEnabled(true);
+		return sun;
+	}
+	
+	/**
+	 * Returns the usual mappings, behind enough others that never match
+	 * the request to make up the given count.  The others cover every
+	 * way a pattern can be compiled: anchored literals, anchored and
+	 * unanchored patterns that are fused, and a few with back references
+	 * which have to be checked on their own.
+	 */
+	private static final List<String> getMappings(final int count) {
+		final List<String> mappings = new ArrayList<String>(count);
+		for(int i = 0; mappings.size() < count - MAPPINGS.size(); i++) {
+			switch(i % 4) {
+			case 0:
+				mappings.add("GET:^http://localhost:8080/v" + i + "/");
+				break;
+			case 1:
+				mappings.add("GET:^https?://[^/]+/v" + i + "/(json|html)$");
+				break;
+			case 2:
+				mappings.add("*:/legacy" + i + "\\.do$");
+				break;
+			default:
+				mappings.add((i % 100 == 3) ?
+					"GET:/(v|w)\\1/" + i + "$" :
+					"POST:/upload/v" + i + "/.*$");
+				break;
+			}
+		}
+		mappings.addAll(MAPPINGS);
+		return mappings;
+	}
+	
+	private static final RequestPathInterceptor newInterceptor(
+		final boolean reuseRequestUrlBuffer, final List<String> mappings)
+		throws Exception {
+		final RequestPathInterceptor interceptor =
+			new RequestPathInterceptor();
+		interceptor.setRequestMappings(mappings);
+		interceptor.setReuseRequestUrlBuffer(reuseRequestUrlBuffer);
+		interceptor.setRejectionStrategy(
+			RequestPathInterceptor.RejectionStrategy.STATUS);
+		interceptor.afterPropertiesSet();
+		return interceptor;
+	}
+	
+}
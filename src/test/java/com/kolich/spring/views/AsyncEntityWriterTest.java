@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) 2012 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.spring.views;
+
+import static com.kolich.spring.views.AbstractKolichView.VIEW_PAYLOAD;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.Test;
+
+import com.kolich.common.entities.KolichCommonEntity;
+import com.kolich.spring.views.mappers.KolichMappingJSONView;
+
+/**
+ * Puts a handful of clients that never read their response in front of
+ * an embedded Jetty, and counts how many container threads they keep
+ * busy with and without asynchronous rendering.
+ */
+public final class AsyncEntityWriterTest {
+	
+	private static final String LOOPBACK = "127.0.0.1";
+	
+	private static final int MAX_THREADS = 32;
+	private static final int CLIENTS = 4;
+	
+	/**
+	 * Way more than the socket buffers on both ends can hold, so that
+	 * a synchronous write blocks until the client reads.
+	 */
+	private static final int ENTITY_SIZE = 8 * 1024 * 1024;
+	
+	/**
+	 * Tiny, so the throttled clients take next to nothing off the wire.
+	 */
+	private static final int CLIENT_RECEIVE_BUFFER = 1024;
+	
+	private static final long DISPATCH_TIMEOUT_MS = 10000L;
+	private static final long SETTLE_MS = 1000L;
+	
+	@Test
+	public void asyncRenderingReleasesThreadsOfThrottledClients()
+		throws Exception {
+		final int sync = getOccupiedThreads(false);
+		final int async = getOccupiedThreads(true);
+		assertTrue("Throttled clients held only " + sync + " threads " +
+			"when rendering synchronously.", sync >= CLIENTS);
+		assertTrue("Throttled clients held " + async + " threads when " +
+			"rendering asynchronously.", async < CLIENTS);
+	}
+	
+	/**
+	 * Returns how many more container threads are busy while the
+	 * throttled clients are stuck on their responses than before.
+	 */
+	private static final int getOccupiedThreads(final boolean asyncRendering)
+		throws Exception {
+		final QueuedThreadPool pool = new QueuedThreadPool(MAX_THREADS);
+		final Server server = new Server(pool);
+		final ServerConnector connector = new ServerConnector(server);
+		connector.setHost(LOOPBACK);
+		connector.setPort(0);
+		server.addConnector(connector);
+		final ServletContextHandler handler = new ServletContextHandler();
+		handler.setContextPath("/");
+		final EntityServlet servlet = new EntityServlet(asyncRendering);
+		final ServletHolder holder = new ServletHolder(servlet);
+		holder.setAsyncSupported(true);
+		handler.addServlet(holder, "/");
+		server.setHandler(handler);
+		server.start();
+		final List<Socket> clients = new ArrayList<Socket>();
+		try {
+			// Acceptors and selectors run on the pool too.
+			final int idle = pool.getBusyThreads();
+			for(int i = 0; i < CLIENTS; i++) {
+				clients.add(request(connector.getLocalPort()));
+			}
+			final long deadline = System.currentTimeMillis() +
+				DISPATCH_TIMEOUT_MS;
+			while(servlet.requests_.get() < CLIENTS &&
+				System.currentTimeMillis() < deadline) {
+				Thread.sleep(10L);
+			}
+			assertEquals(CLIENTS, servlet.requests_.get());
+			Thread.sleep(SETTLE_MS);
+			return pool.getBusyThreads() - idle;
+		} finally {
+			for(final Socket client : clients) {
+				client.close();
+			}
+			server.stop();
+		}
+	}
+	
+	/**
+	 * Sends a request, then never reads a byte of the response.
+	 */
+	private static final Socket request(final int port) throws IOException {
+		final Socket socket = new Socket();
+		socket.setReceiveBufferSize(CLIENT_RECEIVE_BUFFER);
+		socket.connect(new InetSocketAddress(LOOPBACK, port));
+		final OutputStream os = socket.getOutputStream();
+		os.write(("GET / HTTP/1.1\r\nHost: " + LOOPBACK + "\r\n\r\n")
+			.getBytes("US-ASCII"));
+		os.flush();
+		return socket;
+	}
+	
+	private static final class EntityServlet extends HttpServlet {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final KolichMappingJSONView view_;
+		private final Map<String, ?> model_;
+		private final AtomicInteger requests_ = new AtomicInteger(0);
+		
+		private EntityServlet(final boolean asyncRendering) {
+			view_ = new KolichMappingJSONView();
+			view_.setAsyncRendering(asyncRendering);
+			view_.setAsyncRenderingThreshold(0);
+			final Payload entity = new Payload(ENTITY_SIZE);
+			model_ = Collections.singletonMap(VIEW_PAYLOAD,
+				new KolichViewSerializable() {
+					@Override
+					public KolichCommonEntity getEntity() {
+						return entity;
+					}
+				});
+		}
+		
+		@Override
+		protected void doGet(final HttpServletRequest request,
+			final HttpServletResponse response)
+			throws ServletException, IOException {
+			requests_.incrementAndGet();
+			try {
+				view_.render(model_, request, response);
+			} catch (IOException e) {
+				// The client went away, expected when the test is done.
+			} catch (Exception e) {
+				throw new ServletException(e);
+			}
+		}
+		
+	}
+	
+	/**
+	 * An entity whose serialized form is roughly the given size.
+	 */
+	private static final class Payload extends KolichCommonEntity {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final String data_;
+		
+		private Payload(final int size) {
+			final char[] data = new char[size];
+			Arrays.fill(data, 'k');
+			data_ = new String(data);
+		}
+		
+		@Override
+		public boolean equals(final Object obj) {
+			return obj instanceof Payload && ((Payload)obj).data_.equals(data_);
+		}
+		
+		@Override
+		public int hashCode() {
+			return data_.hashCode();
+		}
+		
+	}
+	
+}